@@ -0,0 +1,335 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import edu.cmu.lti.oaqa.framework.PhaseProfile;
+import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.QALogger;
+import edu.cmu.lti.oaqa.framework.TimeBudget;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
+import edu.cmu.lti.oaqa.framework.data.DocIdDictionary;
+import edu.cmu.lti.oaqa.framework.persistence.DiscardingLogPersistenceProvider;
+import edu.cmu.lti.oaqa.framework.persistence.PhaseResultStore;
+
+/**
+ * The common base of the phase components: it keeps the time budget of the current question
+ * ("time-budget-ms"), samples and writes the log records of the phase through a {@link QALogger},
+ * and reports the {@link PhaseProfile} of the component at the end of the collection.
+ * <p>
+ * Tasks run with {@link #callWithinBudget(Callable)} are given up on when the budget is over. Such
+ * a task may keep running until it notices it was interrupted, and the next task of the component
+ * waits for it, so subclasses are still called by one thread at a time. The wait is part of the
+ * budget of the next question: if the task is still running when it is over, the next question is
+ * given up on as well.
+ */
+public abstract class AbstractPhaseComponent extends AbstractLoggedComponent {
+
+  // parameters of the framework, which do not change the output of a component
+  private static final Set<String> FRAMEWORK_PARAMETERS = ImmutableSet.of("persistence-provider",
+          "time-budget-ms", "log-sample-rate", "log-async", "log-queue-size", "store-limit",
+          "store-directory", "cache-results", "cache-size", "cache-ttl-ms", "memoize-keyterms",
+          "memo-size", "memo-directory", "query-threads", "extraction-threads");
+
+  // the framework parameters are not inherited by stages, which log through their chain
+  private static final Map<String, Object> STAGE_DEFAULTS;
+
+  static {
+    Map<String, Object> defaults = new HashMap<String, Object>();
+    for (String name : FRAMEWORK_PARAMETERS) {
+      defaults.put(name, null);
+    }
+    defaults.put("persistence-provider", "class: "
+            + DiscardingLogPersistenceProvider.class.getName());
+    STAGE_DEFAULTS = Collections.unmodifiableMap(defaults);
+  }
+
+  private final QALogEntry entry;
+
+  private String componentId;
+
+  private long timeBudget;
+
+  private long deadline = TimeBudget.UNLIMITED;
+
+  private final TimeBudget.Runner runner = new TimeBudget.Runner();
+
+  // the results found so far by the task of the current question
+  private volatile AtomicReference<List<?>> partialResult = new AtomicReference<List<?>>();
+
+  // the partial results to which the task run by the current thread writes
+  private final ThreadLocal<AtomicReference<List<?>>> taskPartialResult =
+          new ThreadLocal<AtomicReference<List<?>>>();
+
+  private PhaseProfile profile;
+
+  private QALogger logger;
+
+  private boolean logged = true;
+
+  // the stores opened by the component, once per opening, which are closed when it is destroyed
+  private final List<PhaseResultStore> stores = new ArrayList<PhaseResultStore>();
+
+  // the component that runs this one as a stage, and whose logger and profile it uses
+  private AbstractPhaseComponent chain;
+
+  protected AbstractPhaseComponent(QALogEntry entry) {
+    this.entry = entry;
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    componentId = getClass().getName()
+            + UimaContextHelper.getConfigParameterSignature(context, FRAMEWORK_PARAMETERS);
+    if (chain != null) {
+      logger = chain.logger;
+      profile = chain.profile;
+      return;
+    }
+    logger = QALogger.create(context, getClass().getSimpleName());
+    timeBudget = UimaContextHelper.getConfigParameterIntValue(context, "time-budget-ms", 0);
+    profile = PhaseProfile.forComponent(getClass().getName()
+            + UimaContextHelper.getConfigParameterSignature(context));
+  }
+
+  /**
+   * Initializes a component that this one runs as a stage of its own task. A parameter
+   * <code>name</code> of the stage is read from <code>prefix + name</code> if it is set, and from
+   * the parameters of this component otherwise, but for the framework parameters, which are not
+   * inherited. The stage logs with the logger of this component and is profiled as part of it.
+   */
+  protected final void initializeStage(AbstractPhaseComponent stage, UimaContext context,
+          String prefix) throws ResourceInitializationException {
+    stage.chain = this;
+    stage.initialize(UimaContextHelper.getConfigParameterNamespace(context, prefix,
+            STAGE_DEFAULTS));
+  }
+
+  /**
+   * Starts a question: decides whether it is logged and gets its deadline.
+   */
+  @Override
+  public void process(JCas jcas) throws AnalysisEngineProcessException {
+    super.process(jcas);
+    DocIdDictionary.startRun(uuid);
+    logged = logger.sample();
+    deadline = TimeBudget.getDeadline(jcas, timeBudget);
+  }
+
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    awaitOverrun();
+    logged = true;
+    if (chain != null) {
+      return;
+    }
+    String summary = profile.report();
+    if (trace != null) {
+      log(summary);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    closeStores();
+    if (chain == null) {
+      logger.close();
+    }
+    super.destroy();
+  }
+
+  /**
+   * Returns the class of the component and the parameters that can change its output, which
+   * identify the results of the component across runs.
+   */
+  protected final String getComponentId() {
+    return componentId;
+  }
+
+  /**
+   * Opens the store in the directory for the component. The store is closed when the component is
+   * destroyed.
+   */
+  protected final PhaseResultStore openStore(String directory)
+          throws ResourceInitializationException {
+    try {
+      PhaseResultStore store = PhaseResultStore.open(new File(directory));
+      stores.add(store);
+      return store;
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Closes the stores opened by the component, once a task that overran its budget and may still
+   * use them is done. Each opening is closed only once, however often the component is destroyed.
+   * A failure is only reported to the UIMA logger, as the component is being destroyed anyway.
+   */
+  private void closeStores() {
+    if (stores.isEmpty()) {
+      return;
+    }
+    awaitOverrun();
+    for (PhaseResultStore store : stores) {
+      try {
+        store.close();
+      } catch (IOException e) {
+        getContext().getLogger().log(Level.WARNING, "Cannot close a result store", e);
+      }
+    }
+    stores.clear();
+  }
+
+  /**
+   * Waits for a task that overran its budget, at most as long again as the time it was given, and
+   * reports it to the UIMA logger if it is still running.
+   */
+  private void awaitOverrun() {
+    try {
+      if (!runner.await()) {
+        getContext().getLogger().log(Level.WARNING,
+                "A task of " + getClass().getName() + " that overran its budget is still running");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  protected final PhaseProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Returns the milliseconds left in the time budget of the current question, or
+   * {@link TimeBudget#UNLIMITED} if it has none.
+   */
+  protected final long getRemainingTime() {
+    return TimeBudget.getRemainingTime(deadline);
+  }
+
+  /**
+   * Runs the task within the budget of the current question, and throws a
+   * {@link TimeoutException} if it overruns it, or if a task of an earlier question that overran
+   * its own budget is still running when the budget is over.
+   */
+  protected final <V> V callWithinBudget(final Callable<V> task) throws Exception {
+    final AtomicReference<List<?>> holder = new AtomicReference<List<?>>();
+    partialResult = holder;
+    return runner.call(new Callable<V>() {
+      @Override
+      public V call() throws Exception {
+        taskPartialResult.set(holder);
+        try {
+          return task.call();
+        } finally {
+          taskPartialResult.remove();
+        }
+      }
+    }, deadline);
+  }
+
+  /**
+   * Keeps the results found so far by the task of the current question, which are stored instead
+   * of its result if it overruns the time budget. It must be called from the thread that runs the
+   * task, so that a task that is given up on cannot change the results of a later question. The
+   * list is copied by another thread through its <code>toArray()</code> method, so it should
+   * either not be changed afterwards, or be a list such as a
+   * {@link java.util.Collections#synchronizedList(List) synchronized list} whose
+   * <code>toArray()</code> returns a consistent snapshot while the task adds to it.
+   */
+  protected final void setPartialResult(List<?> result) {
+    AtomicReference<List<?>> holder = taskPartialResult.get();
+    if (holder != null) {
+      holder.set(result);
+    }
+  }
+
+  /**
+   * Returns a copy of the results kept by {@link #setPartialResult(List)} for the current question,
+   * or an empty list.
+   */
+  @SuppressWarnings("unchecked")
+  protected final <T> List<T> getPartialResult() {
+    List<?> result = partialResult.get();
+    return result == null ? new ArrayList<T>() : new ArrayList<T>((List<T>) Arrays.asList(result
+            .toArray()));
+  }
+
+  /**
+   * Returns whether the messages of the current question are logged, so that the ones that are
+   * costly to build can be skipped otherwise.
+   */
+  protected final boolean isLogged() {
+    return logged;
+  }
+
+  protected final void log(String message) {
+    if (logged) {
+      logAlways(message);
+    }
+  }
+
+  /**
+   * Logs a message whether or not the current question is sampled, for events such as overruns of
+   * the time budget that should not go unnoticed.
+   */
+  protected final void logAlways(String message) {
+    (chain == null ? this : chain).write(entry, message);
+  }
+
+  private void write(QALogEntry type, String message) {
+    if (!logger.append(uuid, trace, type, message)) {
+      super.log(type, message);
+    }
+  }
+
+  /**
+   * Lets a stage of an updater chain log under the experiment and trace of the chain, as the
+   * {@link #process(JCas)} of the stage is not called.
+   */
+  protected final void shareLogContext(AbstractPhaseComponent stage) {
+    stage.uuid = uuid;
+    stage.trace = trace;
+    stage.logged = logged;
+    stage.deadline = deadline;
+  }
+
+}
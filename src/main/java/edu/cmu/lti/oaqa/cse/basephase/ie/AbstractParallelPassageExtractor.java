@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase.ie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
+import edu.cmu.lti.oaqa.framework.data.Keyterm;
+import edu.cmu.lti.oaqa.framework.data.PassageCandidate;
+import edu.cmu.lti.oaqa.framework.data.RetrievalResult;
+
+/**
+ * A passage extractor that extracts the passages of each document separately and runs the
+ * documents on a thread pool, whose size is set by the "extraction-threads" parameter (the number
+ * of processors by default). The passages are returned in the order of the documents, and in the
+ * order given by {@link #extractPassages(String, List, RetrievalResult)} within a document, so the
+ * result does not depend on the scheduling. If the time budget of the question is over, the
+ * passages of the documents done up to the first one that is not are kept as the partial result.
+ * <p>
+ * Subclasses must be safe to call from several threads at once.
+ */
+public abstract class AbstractParallelPassageExtractor extends AbstractPassageExtractor {
+
+  private ExecutorService executor;
+
+  protected abstract List<PassageCandidate> extractPassages(String question,
+          List<Keyterm> keyterms, RetrievalResult document);
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    int threads = UimaContextHelper.getConfigParameterIntValue(context, "extraction-threads",
+            Runtime.getRuntime().availableProcessors());
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat(getClass().getSimpleName() + "-%d").build());
+  }
+
+  @Override
+  protected final List<PassageCandidate> extractPassages(final String question,
+          final List<Keyterm> keyterms, List<RetrievalResult> documents) {
+    List<Future<List<PassageCandidate>>> futures = new ArrayList<Future<List<PassageCandidate>>>(
+            documents.size());
+    for (final RetrievalResult document : documents) {
+      futures.add(executor.submit(new Callable<List<PassageCandidate>>() {
+        @Override
+        public List<PassageCandidate> call() throws Exception {
+          return extractPassages(question, keyterms, document);
+        }
+      }));
+    }
+    // the passages of the documents done so far, in order
+    List<PassageCandidate> passages = Collections
+            .synchronizedList(new ArrayList<PassageCandidate>());
+    setPartialResult(passages);
+    try {
+      for (Future<List<PassageCandidate>> future : futures) {
+        passages.addAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<List<PassageCandidate>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return passages;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+    super.destroy();
+  }
+
+}
@@ -16,14 +16,20 @@
 
 package edu.cmu.lti.oaqa.cse.basephase.ie;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
 import edu.cmu.lti.oaqa.framework.ViewManager;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
 import edu.cmu.lti.oaqa.framework.data.KeytermList;
@@ -31,6 +37,8 @@ import edu.cmu.lti.oaqa.framework.data.PassageCandidate;
 import edu.cmu.lti.oaqa.framework.data.PassageCandidateArray;
 import edu.cmu.lti.oaqa.framework.data.RetrievalResult;
 import edu.cmu.lti.oaqa.framework.data.RetrievalResultArray;
+import edu.cmu.lti.oaqa.framework.data.WrapperListCodec;
+import edu.cmu.lti.oaqa.framework.persistence.PhaseResultStore;
 import edu.cmu.lti.oaqa.framework.types.InputElement;
 
 /**
@@ -38,33 +46,87 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractPassageExtractor extends AbstractLoggedComponent {
+public abstract class AbstractPassageExtractor extends AbstractPhaseComponent {
+
+  private int storeLimit;
+
+  private PhaseResultStore store;
+
+  protected AbstractPassageExtractor() {
+    super(QALogEntry.INFORMATION_EXTRACTION);
+  }
 
   protected abstract List<PassageCandidate> extractPassages(String question,
           List<Keyterm> keyterms, List<RetrievalResult> documents);
 
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    storeLimit = UimaContextHelper.getConfigParameterIntValue(context, "store-limit",
+            Integer.MAX_VALUE);
+    String storeDirectory = UimaContextHelper.getConfigParameterStringValue(context,
+            "store-directory", null);
+    if (storeDirectory != null) {
+      store = openStore(storeDirectory);
+    }
+  }
+
   @Override
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
-      String questionText = ((InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type))
-              .getQuestion();
-      List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
-      List<RetrievalResult> documents = RetrievalResultArray.retrieveRetrievalResults(ViewManager
-              .getDocumentView(jcas));
+      final String questionText = ((InputElement) BaseJCasHelper.getAnnotation(jcas,
+              InputElement.type)).getQuestion();
+      final List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
+      final List<RetrievalResult> documents = RetrievalResultArray
+              .retrieveRetrievalResults(ViewManager.getDocumentView(jcas));
+      long prepared = System.nanoTime();
+      int inputs = documents.size();
       // do task
-      List<PassageCandidate> answers = extractPassages(questionText, keyterms, documents);
-      log("ANSWER PASSAGES: " + answers.size());
+      String storeKey = store == null ? null : PhaseResultStore.createKey(jcas, getComponentId());
+      ByteBuffer stored = store == null ? null : store.get(storeKey);
+      List<PassageCandidate> answers;
+      if (stored != null) {
+        answers = WrapperListCodec.decodePassageCandidates(stored);
+        log("LOADED FROM STORE");
+      } else {
+        try {
+          answers = callWithinBudget(new Callable<List<PassageCandidate>>() {
+            @Override
+            public List<PassageCandidate> call() throws Exception {
+              return extractPassages(questionText, keyterms, documents);
+            }
+          });
+          if (store != null) {
+            store.put(storeKey, WrapperListCodec.encodePassageCandidates(answers));
+          }
+        } catch (TimeoutException e) {
+          answers = getPartialResult();
+          logAlways("BUDGET EXCEEDED: " + answers.size() + " PARTIAL RESULTS");
+        }
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log("ANSWER PASSAGES: " + answers.size());
+      }
       // save output
-      PassageCandidateArray.storePassageCandidates(ViewManager.getCandidateView(jcas), answers);
+      PassageCandidateArray.storePassageCandidates(ViewManager.getCandidateView(jcas), answers,
+              storeLimit);
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              inputs, answers.size(), ViewManager.getCandidateView(jcas).getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.INFORMATION_EXTRACTION, message);
+  /**
+   * Returns the maximum number of candidates stored per question, from the "store-limit"
+   * parameter.
+   */
+  int getStoreLimit() {
+    return storeLimit;
   }
 
 }
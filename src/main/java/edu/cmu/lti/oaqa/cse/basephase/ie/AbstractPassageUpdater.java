@@ -17,13 +17,18 @@
 package edu.cmu.lti.oaqa.cse.basephase.ie;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
 import edu.cmu.lti.oaqa.framework.ViewManager;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
 import edu.cmu.lti.oaqa.framework.data.KeytermList;
@@ -38,36 +43,78 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractPassageUpdater extends AbstractLoggedComponent {
+public abstract class AbstractPassageUpdater extends AbstractPhaseComponent {
+
+  private int storeLimit;
+
+  private boolean updateInPlace;
+
+  protected AbstractPassageUpdater() {
+    super(QALogEntry.INFORMATION_EXTRACTION);
+  }
 
   protected abstract List<PassageCandidate> updatePassages(String question, List<Keyterm> keyterms,
           List<RetrievalResult> documents, List<PassageCandidate> passages);
 
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    storeLimit = UimaContextHelper.getConfigParameterIntValue(context, "store-limit",
+            Integer.MAX_VALUE);
+    updateInPlace = UimaContextHelper.getConfigParameterBooleanValue(context, "update-in-place",
+            false);
+  }
+
   @Override
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
-      String questionText = ((InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type))
-              .getQuestion();
+      final String questionText = ((InputElement) BaseJCasHelper.getAnnotation(jcas,
+              InputElement.type)).getQuestion();
       KeytermList keytermList = new KeytermList(jcas);
-      List<Keyterm> keyterms = keytermList.getKeyterms();
-      List<RetrievalResult> documents = RetrievalResultArray.retrieveRetrievalResults(ViewManager
-              .getDocumentView(jcas));
-      List<PassageCandidate> passages = PassageCandidateArray.retrievePassageCandidates(ViewManager
-              .getCandidateView(jcas));
+      final List<Keyterm> keyterms = keytermList.getKeyterms();
+      final List<RetrievalResult> documents = RetrievalResultArray
+              .retrieveRetrievalResults(ViewManager.getDocumentView(jcas));
+      PassageCandidateArray array = new PassageCandidateArray(
+              ViewManager.getCandidateView(jcas), 0);
+      final List<PassageCandidate> candidates = updateInPlace ? array
+              .getPassageCandidatesForUpdate() : array.getPassageCandidates();
+      long prepared = System.nanoTime();
+      int inputs = candidates.size();
       // do task
-      passages = updatePassages(questionText, keyterms, documents, passages);
-      log("ANSWER PASSAGES: " + passages.size());
+      List<PassageCandidate> passages;
+      try {
+        passages = callWithinBudget(new Callable<List<PassageCandidate>>() {
+          @Override
+          public List<PassageCandidate> call() throws Exception {
+            return updatePassages(questionText, keyterms, documents, candidates);
+          }
+        });
+      } catch (TimeoutException e) {
+        logAlways("BUDGET EXCEEDED: INPUT KEPT");
+        return;
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log("ANSWER PASSAGES: " + passages.size());
+      }
       // save output
-      PassageCandidateArray.storePassageCandidates(ViewManager.getCandidateView(jcas), passages);
+      if (updateInPlace) {
+        int created = array.updatePassageCandidates(passages, storeLimit);
+        if (isLogged()) {
+          log("UPDATED IN PLACE: " + created + " NEW");
+        }
+      } else {
+        PassageCandidateArray.storePassageCandidates(ViewManager.getCandidateView(jcas), passages,
+                storeLimit);
+      }
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              inputs, passages.size(), ViewManager.getCandidateView(jcas).getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.INFORMATION_EXTRACTION, message);
-  }
-
 }
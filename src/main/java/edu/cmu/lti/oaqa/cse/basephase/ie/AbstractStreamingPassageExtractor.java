@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase.ie;
+
+import java.util.List;
+
+import edu.cmu.lti.oaqa.framework.data.Keyterm;
+import edu.cmu.lti.oaqa.framework.data.PassageCandidate;
+import edu.cmu.lti.oaqa.framework.data.RetrievalResult;
+
+/**
+ * A passage extractor that emits the candidates of each document into a {@link PassageSink} that
+ * keeps only the "store-limit" best of them, instead of returning all the candidates.
+ * <p>
+ * The documents are visited in retrieval rank order. Before each document,
+ * {@link #getScoreUpperBound(String, List, RetrievalResult)} is asked for a bound on the score of
+ * any candidate of that document and of every document after it; once the bound cannot beat the
+ * worst candidate in a full sink, the remaining documents are skipped. The kept candidates are the
+ * same as those stored without streaming, as long as the bounds hold.
+ * <p>
+ * Stopping early requires a finite "store-limit". With the default, which keeps every candidate,
+ * the sink never fills, so every document is visited and the bounds are not asked for. If the
+ * time budget of the question is over, the candidates kept so far by the sink are the partial
+ * result.
+ */
+public abstract class AbstractStreamingPassageExtractor extends AbstractPassageExtractor {
+
+  protected abstract void extractPassages(String question, List<Keyterm> keyterms,
+          RetrievalResult document, PassageSink sink);
+
+  /**
+   * Returns an upper bound of the score of the candidates of the document and of all the
+   * documents ranked after it. The default bound never stops the extraction early.
+   */
+  protected float getScoreUpperBound(String question, List<Keyterm> keyterms,
+          RetrievalResult document) {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  @Override
+  protected final List<PassageCandidate> extractPassages(String question, List<Keyterm> keyterms,
+          List<RetrievalResult> documents) {
+    PassageSink sink = new PassageSink(getStoreLimit());
+    setPartialResult(sink.asList());
+    boolean bounded = getStoreLimit() < Integer.MAX_VALUE;
+    int visited = 0;
+    for (RetrievalResult document : documents) {
+      if (bounded && !sink.canAccept(getScoreUpperBound(question, keyterms, document))) {
+        break;
+      }
+      extractPassages(question, keyterms, document, sink);
+      visited++;
+    }
+    if (isLogged()) {
+      log("STREAMED: " + visited + " OF " + documents.size() + " DOCUMENTS");
+    }
+    return sink.getPassages();
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase.ie;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.cmu.lti.oaqa.framework.data.PassageCandidate;
+
+/**
+ * Collects the passage candidates emitted by an {@link AbstractStreamingPassageExtractor} and keeps
+ * only the K best of them in a bounded heap. As in
+ * {@link edu.cmu.lti.oaqa.framework.data.base.TopKSelection}, a candidate that ties with an earlier
+ * one ranks below it, so the sink keeps the same candidates as a top-K selection over the whole
+ * list in emission order.
+ * <p>
+ * The sink may be read by another thread while it is being filled, e.g. through {@link #asList()}.
+ */
+public final class PassageSink {
+
+  private static final class Entry {
+
+    final PassageCandidate candidate;
+
+    final int sequence;
+
+    Entry(PassageCandidate candidate, int sequence) {
+      this.candidate = candidate;
+      this.sequence = sequence;
+    }
+
+  }
+
+  // the root is the candidate that would be dropped first: the lowest score, then the latest
+  private static final Comparator<Entry> WORST_FIRST = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry e1, Entry e2) {
+      int cmp = e1.candidate.compareTo(e2.candidate);
+      return cmp != 0 ? cmp : e2.sequence - e1.sequence;
+    }
+  };
+
+  private final int k;
+
+  private final PriorityQueue<Entry> heap;
+
+  private int sequence;
+
+  public PassageSink(int k) {
+    this.k = k;
+    heap = new PriorityQueue<Entry>(Math.max(1, Math.min(k, 1024)), WORST_FIRST);
+  }
+
+  public synchronized void add(PassageCandidate candidate) {
+    if (k <= 0) {
+      return;
+    }
+    Entry entry = new Entry(candidate, sequence++);
+    if (heap.size() < k) {
+      heap.add(entry);
+    } else if (WORST_FIRST.compare(heap.peek(), entry) < 0) {
+      heap.poll();
+      heap.add(entry);
+    }
+  }
+
+  public synchronized void addAll(List<PassageCandidate> candidates) {
+    for (PassageCandidate candidate : candidates) {
+      add(candidate);
+    }
+  }
+
+  public synchronized boolean isFull() {
+    return heap.size() >= k;
+  }
+
+  /**
+   * Returns the score a new candidate must exceed to be kept, or negative infinity if the sink is
+   * not full yet.
+   */
+  public synchronized float getThreshold() {
+    return isFull() && k > 0 ? heap.peek().candidate.getProbability() : Float.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Whether a candidate scored at most <code>upperBound</code> could still be kept.
+   */
+  public synchronized boolean canAccept(float upperBound) {
+    return k > 0 && (!isFull() || upperBound > getThreshold());
+  }
+
+  /**
+   * Returns the kept candidates in the order they were emitted.
+   */
+  public synchronized List<PassageCandidate> getPassages() {
+    List<Entry> entries = new ArrayList<Entry>(heap);
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        return e1.sequence - e2.sequence;
+      }
+    });
+    List<PassageCandidate> passages = new ArrayList<PassageCandidate>(entries.size());
+    for (Entry entry : entries) {
+      passages.add(entry.candidate);
+    }
+    return passages;
+  }
+
+  /**
+   * Returns a read-only view of the kept candidates in the order they were emitted, whose
+   * <code>toArray()</code> takes a consistent snapshot while the sink is being filled.
+   */
+  public List<PassageCandidate> asList() {
+    return new AbstractList<PassageCandidate>() {
+
+      @Override
+      public PassageCandidate get(int index) {
+        return getPassages().get(index);
+      }
+
+      @Override
+      public int size() {
+        synchronized (PassageSink.this) {
+          return heap.size();
+        }
+      }
+
+      @Override
+      public Object[] toArray() {
+        return getPassages().toArray();
+      }
+
+    };
+  }
+
+}
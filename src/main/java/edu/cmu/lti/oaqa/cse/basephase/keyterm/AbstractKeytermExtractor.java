@@ -16,16 +16,29 @@
 
 package edu.cmu.lti.oaqa.cse.basephase.keyterm;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
 import edu.cmu.lti.oaqa.framework.data.KeytermList;
+import edu.cmu.lti.oaqa.framework.data.WrapperListCodec;
+import edu.cmu.lti.oaqa.framework.persistence.PhaseResultStore;
 import edu.cmu.lti.oaqa.framework.types.InputElement;
 
 /**
@@ -33,29 +46,133 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractKeytermExtractor extends AbstractLoggedComponent {
+public abstract class AbstractKeytermExtractor extends AbstractPhaseComponent {
+
+  private Cache<String, ByteBuffer> memo;
+
+  private PhaseResultStore store;
+
+  private boolean memoize;
+
+  private PhaseResultStore memoStore;
+
+  private final AtomicInteger memoryHits = new AtomicInteger();
+
+  private final AtomicInteger diskHits = new AtomicInteger();
+
+  private final AtomicInteger misses = new AtomicInteger();
+
+  protected AbstractKeytermExtractor() {
+    super(QALogEntry.KEYTERM);
+  }
 
   protected abstract List<Keyterm> getKeyterms(String question);
 
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    String storeDirectory = UimaContextHelper.getConfigParameterStringValue(context,
+            "store-directory", null);
+    if (storeDirectory != null) {
+      store = openStore(storeDirectory);
+    }
+    memoize = UimaContextHelper.getConfigParameterBooleanValue(context, "memoize-keyterms", false);
+    if (memoize) {
+      int memoSize = UimaContextHelper.getConfigParameterIntValue(context, "memo-size", 10000);
+      memo = CacheBuilder.newBuilder().maximumSize(memoSize).build();
+      String memoDirectory = UimaContextHelper.getConfigParameterStringValue(context,
+              "memo-directory", null);
+      if (memoDirectory != null) {
+        memoStore = openStore(memoDirectory);
+      }
+    }
+  }
+
+  /**
+   * Returns the keyterms of the question. If "memoize-keyterms" is set, the keyterms are looked up
+   * by the component configuration and the question text, first in memory and then in the
+   * "memo-directory" store if there is one, and {@link #getKeyterms(String)} is only called if
+   * they are not found.
+   */
+  private List<Keyterm> getKeytermsMemoized(String question) throws IOException {
+    if (!memoize) {
+      return getKeyterms(question);
+    }
+    String key = "keyterms|" + getComponentId() + "|" + question;
+    ByteBuffer memoized = memo.getIfPresent(key);
+    if (memoized != null) {
+      memoryHits.incrementAndGet();
+    } else if (memoStore != null && (memoized = memoStore.get(key)) != null) {
+      diskHits.incrementAndGet();
+      memo.put(key, memoized);
+    }
+    if (memoized != null) {
+      return WrapperListCodec.decodeKeyterms(memoized.duplicate());
+    }
+    List<Keyterm> keyterms = getKeyterms(question);
+    ByteBuffer encoded = WrapperListCodec.encodeKeyterms(keyterms);
+    memo.put(key, encoded);
+    if (memoStore != null) {
+      memoStore.put(key, encoded);
+    }
+    misses.incrementAndGet();
+    return keyterms;
+  }
+
   @Override
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
       InputElement input = (InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type);
-      String question = input.getQuestion();
+      final String question = input.getQuestion();
+      long prepared = System.nanoTime();
       // do task
-      List<Keyterm> keyterms = getKeyterms(question);
-      log(keyterms.toString());
+      String storeKey = store == null ? null : PhaseResultStore.createKey(jcas, getComponentId());
+      ByteBuffer stored = store == null ? null : store.get(storeKey);
+      List<Keyterm> keyterms;
+      if (stored != null) {
+        keyterms = WrapperListCodec.decodeKeyterms(stored);
+        log("LOADED FROM STORE");
+      } else {
+        try {
+          keyterms = callWithinBudget(new Callable<List<Keyterm>>() {
+            @Override
+            public List<Keyterm> call() throws Exception {
+              return getKeytermsMemoized(question);
+            }
+          });
+          if (store != null) {
+            store.put(storeKey, WrapperListCodec.encodeKeyterms(keyterms));
+          }
+        } catch (TimeoutException e) {
+          keyterms = getPartialResult();
+          logAlways("BUDGET EXCEEDED: " + keyterms.size() + " PARTIAL RESULTS");
+        }
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log(keyterms.toString());
+      }
       // save output
       KeytermList.storeKeyterms(jcas, keyterms);
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              0, keyterms.size(), jcas.getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.KEYTERM, message);
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    int hits = memoryHits.get() + diskHits.get();
+    int lookups = hits + misses.get();
+    if (memoize && trace != null && lookups > 0) {
+      log(String.format("MEMO: %d MEMORY HITS, %d DISK HITS, %d MISSES, HIT RATE %.3f",
+              memoryHits.get(), diskHits.get(), misses.get(), hits / (double) lookups));
+    }
   }
 
 }
@@ -17,11 +17,13 @@
 package edu.cmu.lti.oaqa.cse.basephase.keyterm;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
@@ -33,7 +35,11 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractKeytermUpdater extends AbstractLoggedComponent {
+public abstract class AbstractKeytermUpdater extends AbstractPhaseComponent {
+
+  protected AbstractKeytermUpdater() {
+    super(QALogEntry.KEYTERM);
+  }
 
   protected abstract List<Keyterm> updateKeyterms(String question, List<Keyterm> keyterms);
 
@@ -41,23 +47,37 @@ public abstract class AbstractKeytermUpdater extends AbstractLoggedComponent {
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
-      String question = ((InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type))
-              .getQuestion();
-      List<Keyterm> keyterms;
-      keyterms = KeytermList.retrieveKeyterms(jcas);
+      final String question = ((InputElement) BaseJCasHelper.getAnnotation(jcas,
+              InputElement.type)).getQuestion();
+      final List<Keyterm> input = KeytermList.retrieveKeyterms(jcas);
+      long prepared = System.nanoTime();
+      int inputs = input.size();
       // do task
-      keyterms = updateKeyterms(question, keyterms);
-      log(keyterms.toString());
+      List<Keyterm> keyterms;
+      try {
+        keyterms = callWithinBudget(new Callable<List<Keyterm>>() {
+          @Override
+          public List<Keyterm> call() throws Exception {
+            return updateKeyterms(question, input);
+          }
+        });
+      } catch (TimeoutException e) {
+        logAlways("BUDGET EXCEEDED: INPUT KEPT");
+        return;
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log(keyterms.toString());
+      }
       // save output
       KeytermList.storeKeyterms(jcas, keyterms);
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              inputs, keyterms.size(), jcas.getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.KEYTERM, message);
-  }
-
 }
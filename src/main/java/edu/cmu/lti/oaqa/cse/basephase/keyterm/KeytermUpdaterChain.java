@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase.keyterm;
+
+import java.util.List;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
+import edu.cmu.lti.oaqa.framework.data.Keyterm;
+
+/**
+ * Runs a list of {@link AbstractKeytermUpdater}s on the same in-memory list of keyterms.
+ * The list is read from and stored to the CAS once for the whole chain instead of once per
+ * updater.
+ * <p>
+ * The updaters are named by the multi-valued "updaters" parameter and run in the given order. The
+ * i-th updater, counting from 0, reads a parameter <code>name</code> from
+ * <code>updaters.i.name</code> if it is set and from the parameters of the chain otherwise, so the
+ * same class can appear twice with different settings. Framework parameters such as
+ * "persistence-provider" or "store-directory" are not inherited. The updaters log through the
+ * chain and are profiled as part of it; the chain logs the output size and the time of every
+ * stage.
+ */
+public class KeytermUpdaterChain extends AbstractKeytermUpdater {
+
+  private List<AbstractKeytermUpdater> stages;
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    stages = UimaContextHelper.getConfigParameterClassInstances(context, "updaters",
+            AbstractKeytermUpdater.class);
+    for (int i = 0; i < stages.size(); i++) {
+      initializeStage(stages.get(i), context, "updaters." + i + ".");
+    }
+  }
+
+  @Override
+  protected List<Keyterm> updateKeyterms(String question, List<Keyterm> keyterms) {
+    long chainStart = System.currentTimeMillis();
+    for (AbstractKeytermUpdater stage : stages) {
+      shareLogContext(stage);
+      long start = System.currentTimeMillis();
+      keyterms = stage.updateKeyterms(question, keyterms);
+      if (isLogged()) {
+        log("STAGE " + stage.getClass().getSimpleName() + ": " + keyterms.size() + " IN "
+                + (System.currentTimeMillis() - start) + " ms");
+      }
+    }
+    if (isLogged()) {
+      log("CHAIN: " + stages.size() + " STAGES IN " + (System.currentTimeMillis() - chainStart)
+              + " ms");
+    }
+    return keyterms;
+  }
+
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    for (AbstractKeytermUpdater stage : stages) {
+      stage.collectionProcessComplete();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    for (AbstractKeytermUpdater stage : stages) {
+      stage.destroy();
+    }
+    super.destroy();
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.cse.basephase.retrieval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.cmu.lti.oaqa.framework.TimeBudget;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
+import edu.cmu.lti.oaqa.framework.data.Keyterm;
+import edu.cmu.lti.oaqa.framework.data.RetrievalResult;
+
+/**
+ * A retrieval strategist that sends several independent queries for a question at the same time.
+ * Subclasses return one task per query formulation (e.g. strict, relaxed, per concept), which are
+ * run on a bounded thread pool. The hit lists are merged as the queries finish into one list with a
+ * single result per document, the one with the highest score, ordered by the query and the rank at
+ * which the document was first found.
+ * <p>
+ * The "query-threads" parameter sets the size of the pool (the number of processors by default).
+ * The queries get the time left in the budget of the question ("time-budget-ms"); those that are
+ * not done by then are cancelled and their results are left out, as are those of failed queries.
+ * The merged list is then {@link #markPartial(List) marked partial}, so it is neither cached nor
+ * stored. The merged results of the queries done so far are also kept as the partial result of
+ * the question, in case the strategist overruns the budget while merging.
+ */
+public abstract class AbstractParallelRetrievalStrategist extends AbstractRetrievalStrategist {
+
+  private ExecutorService executor;
+
+  protected abstract List<Callable<List<RetrievalResult>>> formulateQueries(String question,
+          List<Keyterm> keyterms);
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    int threads = UimaContextHelper.getConfigParameterIntValue(context, "query-threads", Runtime
+            .getRuntime().availableProcessors());
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat(getClass().getSimpleName() + "-%d").build());
+  }
+
+  @Override
+  protected final List<RetrievalResult> retrieveDocuments(String question, List<Keyterm> keyterms) {
+    List<Callable<List<RetrievalResult>>> queries = formulateQueries(question, keyterms);
+    CompletionService<List<RetrievalResult>> completion =
+            new ExecutorCompletionService<List<RetrievalResult>>(executor);
+    List<Future<List<RetrievalResult>>> futures = new ArrayList<Future<List<RetrievalResult>>>(
+            queries.size());
+    for (Callable<List<RetrievalResult>> query : queries) {
+      futures.add(completion.submit(query));
+    }
+    MergedHitLists hitLists = new MergedHitLists();
+    List<RetrievalResult> merged = hitLists.toList();
+    int done = 0;
+    boolean complete = true;
+    try {
+      for (; done < futures.size(); done++) {
+        long remaining = getRemainingTime();
+        Future<List<RetrievalResult>> future = remaining == TimeBudget.UNLIMITED ? completion
+                .take() : completion.poll(remaining, TimeUnit.MILLISECONDS);
+        if (future == null) {
+          break;
+        }
+        int i = futures.indexOf(future);
+        try {
+          hitLists.add(i, future.get());
+          merged = hitLists.toList();
+          setPartialResult(merged);
+        } catch (ExecutionException e) {
+          log("QUERY " + i + " FAILED: " + e.getCause());
+          complete = false;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (Future<List<RetrievalResult>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    if (done < futures.size()) {
+      if (isLogged()) {
+        log("QUERIES TIMED OUT: " + (futures.size() - done) + " OF " + futures.size());
+      }
+      complete = false;
+    }
+    if (!complete) {
+      markPartial(merged);
+    }
+    return merged;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+    super.destroy();
+  }
+
+  /**
+   * The hit lists of the queries done so far, merged by document id.
+   */
+  private static final class MergedHitLists {
+
+    // the query (high bits) and the rank (low bits) at which each document was first found
+    private final Map<String, Long> keys = new HashMap<String, Long>();
+
+    private final SortedMap<Long, RetrievalResult> results = new TreeMap<Long, RetrievalResult>();
+
+    /**
+     * Merges the hit list of a query, keeping for each document the result with the highest score,
+     * and on a tie the one found first in query order.
+     */
+    void add(int query, List<RetrievalResult> hitList) {
+      for (int i = 0; i < hitList.size(); i++) {
+        RetrievalResult result = hitList.get(i);
+        long key = (long) query << 32 | i;
+        Long first = keys.get(result.getDocID());
+        if (first == null) {
+          keys.put(result.getDocID(), key);
+          results.put(key, result);
+        } else if (key < first) {
+          RetrievalResult kept = results.remove(first);
+          keys.put(result.getDocID(), key);
+          results.put(key, kept.getProbability() > result.getProbability() ? kept : result);
+        } else if (result.getProbability() > results.get(first).getProbability()) {
+          results.put(first, result);
+        }
+      }
+    }
+
+    List<RetrievalResult> toList() {
+      return new ArrayList<RetrievalResult>(results.values());
+    }
+
+  }
+
+}
@@ -16,19 +16,37 @@
 
 package edu.cmu.lti.oaqa.cse.basephase.retrieval;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
 import edu.cmu.lti.oaqa.framework.ViewManager;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
 import edu.cmu.lti.oaqa.framework.data.KeytermList;
 import edu.cmu.lti.oaqa.framework.data.RetrievalResult;
 import edu.cmu.lti.oaqa.framework.data.RetrievalResultArray;
+import edu.cmu.lti.oaqa.framework.data.WrapperListCodec;
+import edu.cmu.lti.oaqa.framework.persistence.PhaseResultStore;
 import edu.cmu.lti.oaqa.framework.types.InputElement;
 
 /**
@@ -36,29 +54,176 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractRetrievalStrategist extends AbstractLoggedComponent {
+public abstract class AbstractRetrievalStrategist extends AbstractPhaseComponent {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // encoded hit lists of the strategist, by question and encoded keyterms
+  private Cache<ByteBuffer, ByteBuffer> cache;
+
+  private int storeLimit;
+
+  private boolean cacheResults;
+
+  private PhaseResultStore store;
+
+  // hit lists known to be incomplete, which are neither cached nor stored
+  private final Set<List<RetrievalResult>> partialResults = Collections.synchronizedSet(Collections
+          .newSetFromMap(new IdentityHashMap<List<RetrievalResult>, Boolean>()));
+
+  protected AbstractRetrievalStrategist() {
+    super(QALogEntry.RETRIEVAL);
+  }
 
   protected abstract List<RetrievalResult> retrieveDocuments(String question, List<Keyterm> keyterms);
 
+  /**
+   * Marks a hit list returned by {@link #retrieveDocuments(String, List)} as incomplete, e.g.
+   * because some of its queries failed or timed out, so that it is neither cached nor stored.
+   */
+  protected final void markPartial(List<RetrievalResult> documents) {
+    partialResults.add(documents);
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    storeLimit = UimaContextHelper.getConfigParameterIntValue(context, "store-limit",
+            Integer.MAX_VALUE);
+    cacheResults = UimaContextHelper.getConfigParameterBooleanValue(context, "cache-results",
+            false);
+    if (cacheResults) {
+      int size = UimaContextHelper.getConfigParameterIntValue(context, "cache-size", 1000);
+      int ttl = UimaContextHelper.getConfigParameterIntValue(context, "cache-ttl-ms", 0);
+      CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(size)
+              .recordStats();
+      if (ttl > 0) {
+        builder.expireAfterWrite(ttl, TimeUnit.MILLISECONDS);
+      }
+      cache = builder.build();
+    }
+    String storeDirectory = UimaContextHelper.getConfigParameterStringValue(context,
+            "store-directory", null);
+    if (storeDirectory != null) {
+      store = openStore(storeDirectory);
+    }
+  }
+
+  /**
+   * Returns the hit, miss and eviction counts of the result cache of the strategist, or
+   * <code>null</code> if "cache-results" is not set.
+   */
+  public CacheStats getCacheStats() {
+    return cache == null ? null : cache.stats();
+  }
+
+  /**
+   * Returns the cache key of the question and the keyterms, which holds the question and the
+   * {@link WrapperListCodec} encoding of the keyterms, or <code>null</code> if a keyterm is of a
+   * subclass of {@link Keyterm}, as the codec does not encode the fields of subclasses.
+   */
+  private static ByteBuffer getCacheKey(String question, List<Keyterm> keyterms) {
+    for (Keyterm keyterm : keyterms) {
+      if (keyterm.getClass() != Keyterm.class) {
+        return null;
+      }
+    }
+    byte[] text = question.getBytes(UTF8);
+    ByteBuffer encoded = WrapperListCodec.encodeKeyterms(keyterms);
+    ByteBuffer key = ByteBuffer.allocate(4 + text.length + encoded.remaining());
+    key.putInt(text.length).put(text).put(encoded).flip();
+    return key;
+  }
+
+  private static boolean isEncodable(List<RetrievalResult> documents) {
+    for (RetrievalResult document : documents) {
+      if (document.getClass() != RetrievalResult.class) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the results of the question in the cache, and retrieves and caches them if they are
+   * not found. The cached hit lists are decoded into new objects on every hit, as the callers are
+   * free to modify them. As they are encoded with {@link WrapperListCodec}, questions with keyterms
+   * and hit lists that use subclasses of {@link Keyterm} or {@link RetrievalResult} are not cached.
+   */
+  private List<RetrievalResult> retrieveDocumentsWithCache(String question,
+          List<Keyterm> keyterms) throws IOException {
+    partialResults.clear();
+    ByteBuffer key = cacheResults ? getCacheKey(question, keyterms) : null;
+    if (key == null) {
+      return retrieveDocuments(question, keyterms);
+    }
+    ByteBuffer hits = cache.getIfPresent(key);
+    if (hits != null) {
+      return WrapperListCodec.decodeRetrievalResults(hits.duplicate());
+    }
+    List<RetrievalResult> documents = retrieveDocuments(question, keyterms);
+    if (!partialResults.contains(documents) && isEncodable(documents)) {
+      cache.put(key, WrapperListCodec.encodeRetrievalResults(documents));
+    }
+    return documents;
+  }
+
   @Override
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
-      InputElement input = ((InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type));
-      List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
+      final InputElement input = ((InputElement) BaseJCasHelper.getAnnotation(jcas,
+              InputElement.type));
+      final List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
+      long prepared = System.nanoTime();
+      int inputs = keyterms.size();
       // do task
-      List<RetrievalResult> documents = retrieveDocuments(input.getQuestion(), keyterms);
-      log("RETRIEVED: " + documents.size());
+      String storeKey = store == null ? null : PhaseResultStore.createKey(jcas, getComponentId());
+      ByteBuffer stored = store == null ? null : store.get(storeKey);
+      List<RetrievalResult> documents;
+      if (stored != null) {
+        documents = WrapperListCodec.decodeRetrievalResults(stored);
+        log("LOADED FROM STORE");
+      } else {
+        try {
+          documents = callWithinBudget(new Callable<List<RetrievalResult>>() {
+            @Override
+            public List<RetrievalResult> call() throws Exception {
+              return retrieveDocumentsWithCache(input.getQuestion(), keyterms);
+            }
+          });
+          if (partialResults.remove(documents)) {
+            log("PARTIAL RESULTS NOT STORED");
+          } else if (store != null) {
+            store.put(storeKey, WrapperListCodec.encodeRetrievalResults(documents));
+          }
+        } catch (TimeoutException e) {
+          documents = getPartialResult();
+          logAlways("BUDGET EXCEEDED: " + documents.size() + " PARTIAL RESULTS");
+        }
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log("RETRIEVED: " + documents.size());
+      }
       // save output
-      RetrievalResultArray.storeRetrievalResults(ViewManager.getDocumentView(jcas), documents);
+      RetrievalResultArray.storeRetrievalResults(ViewManager.getDocumentView(jcas), documents,
+              storeLimit);
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              inputs, documents.size(), ViewManager.getDocumentView(jcas).getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.RETRIEVAL, message);
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    if (cacheResults && trace != null) {
+      log("CACHE: " + getCacheStats());
+    }
   }
 
 }
@@ -17,13 +17,18 @@
 package edu.cmu.lti.oaqa.cse.basephase.retrieval;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
-import edu.cmu.lti.oaqa.ecd.log.AbstractLoggedComponent;
+import edu.cmu.lti.oaqa.cse.basephase.AbstractPhaseComponent;
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.QALogEntry;
+import edu.cmu.lti.oaqa.framework.UimaContextHelper;
 import edu.cmu.lti.oaqa.framework.ViewManager;
 import edu.cmu.lti.oaqa.framework.data.Keyterm;
 import edu.cmu.lti.oaqa.framework.data.KeytermList;
@@ -36,32 +41,74 @@ import edu.cmu.lti.oaqa.framework.types.InputElement;
  * @author Zi Yang <ziy@cs.cmu.edu>
  * 
  */
-public abstract class AbstractRetrievalUpdater extends AbstractLoggedComponent {
+public abstract class AbstractRetrievalUpdater extends AbstractPhaseComponent {
+
+  private int storeLimit;
+
+  private boolean updateInPlace;
+
+  protected AbstractRetrievalUpdater() {
+    super(QALogEntry.RETRIEVAL);
+  }
 
   protected abstract List<RetrievalResult> updateDocuments(String question, List<Keyterm> keyterms,
           List<RetrievalResult> documents);
 
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    storeLimit = UimaContextHelper.getConfigParameterIntValue(context, "store-limit",
+            Integer.MAX_VALUE);
+    updateInPlace = UimaContextHelper.getConfigParameterBooleanValue(context, "update-in-place",
+            false);
+  }
+
   @Override
   public final void process(JCas jcas) throws AnalysisEngineProcessException {
     super.process(jcas);
     try {
+      long start = System.nanoTime();
       // prepare input
-      InputElement input = ((InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type));
-      List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
-      List<RetrievalResult> documents = RetrievalResultArray.retrieveRetrievalResults(ViewManager
-              .getDocumentView(jcas));
+      final InputElement input = ((InputElement) BaseJCasHelper.getAnnotation(jcas,
+              InputElement.type));
+      final List<Keyterm> keyterms = KeytermList.retrieveKeyterms(jcas);
+      RetrievalResultArray array = new RetrievalResultArray(ViewManager.getDocumentView(jcas), 0);
+      final List<RetrievalResult> retrieved = updateInPlace ? array.getRetrievalResultsForUpdate()
+              : array.getRetrievalResults();
+      long prepared = System.nanoTime();
+      int inputs = retrieved.size();
       // do task
-      documents = updateDocuments(input.getQuestion(), keyterms, documents);
-      log("RETRIEVED: " + documents.size());
+      List<RetrievalResult> documents;
+      try {
+        documents = callWithinBudget(new Callable<List<RetrievalResult>>() {
+          @Override
+          public List<RetrievalResult> call() throws Exception {
+            return updateDocuments(input.getQuestion(), keyterms, retrieved);
+          }
+        });
+      } catch (TimeoutException e) {
+        logAlways("BUDGET EXCEEDED: INPUT KEPT");
+        return;
+      }
+      long computed = System.nanoTime();
+      if (isLogged()) {
+        log("RETRIEVED: " + documents.size());
+      }
       // save output
-      RetrievalResultArray.storeRetrievalResults(ViewManager.getDocumentView(jcas), documents);
+      if (updateInPlace) {
+        int created = array.updateRetrievalResults(documents, storeLimit);
+        if (isLogged()) {
+          log("UPDATED IN PLACE: " + created + " NEW");
+        }
+      } else {
+        RetrievalResultArray.storeRetrievalResults(ViewManager.getDocumentView(jcas), documents,
+                storeLimit);
+      }
+      getProfile().record(prepared - start, computed - prepared, System.nanoTime() - computed,
+              inputs, documents.size(), ViewManager.getDocumentView(jcas).getCas().size());
     } catch (Exception e) {
       throw new AnalysisEngineProcessException(e);
     }
   }
 
-  protected final void log(String message) {
-    super.log(QALogEntry.RETRIEVAL, message);
-  }
-
 }
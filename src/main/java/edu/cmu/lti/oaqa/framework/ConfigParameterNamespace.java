@@ -0,0 +1,199 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.framework;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.AbstractCas;
+import org.apache.uima.cas.SofaID;
+import org.apache.uima.resource.ResourceAccessException;
+import org.apache.uima.resource.Session;
+import org.apache.uima.util.InstrumentationFacility;
+import org.apache.uima.util.Logger;
+
+/**
+ * A view of a context in which a parameter <code>name</code> is read from the parameter
+ * <code>prefix + name</code> if it is set. Otherwise the value is taken from the local defaults if
+ * the name is one of them, and from <code>name</code> in the context if it is not. Everything but
+ * the parameters is read from the context.
+ * 
+ * @see UimaContextHelper#getConfigParameterNamespace(UimaContext, String, Map)
+ */
+final class ConfigParameterNamespace implements UimaContext {
+
+  private final UimaContext context;
+
+  private final String prefix;
+
+  private final Map<String, ?> localDefaults;
+
+  ConfigParameterNamespace(UimaContext context, String prefix, Map<String, ?> localDefaults) {
+    this.context = context;
+    this.prefix = prefix;
+    this.localDefaults = localDefaults;
+  }
+
+  @Override
+  public Object getConfigParameterValue(String name) {
+    Object value = context.getConfigParameterValue(prefix + name);
+    if (value != null) {
+      return value;
+    }
+    return localDefaults.containsKey(name) ? localDefaults.get(name) : context
+            .getConfigParameterValue(name);
+  }
+
+  @Override
+  public Object getConfigParameterValue(String groupName, String name) {
+    Object value = context.getConfigParameterValue(groupName, prefix + name);
+    if (value != null) {
+      return value;
+    }
+    return localDefaults.containsKey(name) ? localDefaults.get(name) : context
+            .getConfigParameterValue(groupName, name);
+  }
+
+  @Override
+  public String[] getConfigParameterNames() {
+    return getNames(context.getConfigParameterNames());
+  }
+
+  @Override
+  public String[] getConfigParameterNames(String groupName) {
+    return getNames(context.getConfigParameterNames(groupName));
+  }
+
+  private String[] getNames(String[] contextNames) {
+    Set<String> names = new LinkedHashSet<String>();
+    for (String name : contextNames) {
+      if (name.startsWith(prefix)) {
+        names.add(name.substring(prefix.length()));
+      } else if (!localDefaults.containsKey(name)) {
+        names.add(name);
+      }
+    }
+    for (Map.Entry<String, ?> local : localDefaults.entrySet()) {
+      if (local.getValue() != null) {
+        names.add(local.getKey());
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  @Override
+  public String[] getConfigurationGroupNames() {
+    return context.getConfigurationGroupNames();
+  }
+
+  @Override
+  public Logger getLogger() {
+    return context.getLogger();
+  }
+
+  @Override
+  public InstrumentationFacility getInstrumentationFacility() {
+    return context.getInstrumentationFacility();
+  }
+
+  @Override
+  public URL getResourceURL(String key) throws ResourceAccessException {
+    return context.getResourceURL(key);
+  }
+
+  @Override
+  public URI getResourceURI(String key) throws ResourceAccessException {
+    return context.getResourceURI(key);
+  }
+
+  @Override
+  public String getResourceFilePath(String key) throws ResourceAccessException {
+    return context.getResourceFilePath(key);
+  }
+
+  @Override
+  public InputStream getResourceAsStream(String key) throws ResourceAccessException {
+    return context.getResourceAsStream(key);
+  }
+
+  @Override
+  public Object getResourceObject(String key) throws ResourceAccessException {
+    return context.getResourceObject(key);
+  }
+
+  @Override
+  public URL getResourceURL(String key, String[] params) throws ResourceAccessException {
+    return context.getResourceURL(key, params);
+  }
+
+  @Override
+  public URI getResourceURI(String key, String[] params) throws ResourceAccessException {
+    return context.getResourceURI(key, params);
+  }
+
+  @Override
+  public String getResourceFilePath(String key, String[] params) throws ResourceAccessException {
+    return context.getResourceFilePath(key, params);
+  }
+
+  @Override
+  public InputStream getResourceAsStream(String key, String[] params)
+          throws ResourceAccessException {
+    return context.getResourceAsStream(key, params);
+  }
+
+  @Override
+  public Object getResourceObject(String key, String[] params) throws ResourceAccessException {
+    return context.getResourceObject(key, params);
+  }
+
+  @Override
+  public String getDataPath() {
+    return context.getDataPath();
+  }
+
+  @Override
+  public Session getSession() {
+    return context.getSession();
+  }
+
+  @Override
+  public SofaID mapToSofaID(String sofaName) {
+    return context.mapToSofaID(sofaName);
+  }
+
+  @Override
+  public String mapSofaIDToComponentSofaName(String sofaId) {
+    return context.mapSofaIDToComponentSofaName(sofaId);
+  }
+
+  @Override
+  public SofaID[] getSofaMappings() {
+    return context.getSofaMappings();
+  }
+
+  @Override
+  public <T extends AbstractCas> T getEmptyCas(Class<T> clazz) {
+    return context.getEmptyCas(clazz);
+  }
+
+}
@@ -0,0 +1,258 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the three steps of a phase component: reading its input from the CAS
+ * (unmarshal), running its task (compute) and writing its output to the CAS (marshal), with the
+ * number of elements read and written and the size of the CAS after each question.
+ * <p>
+ * Profiles are kept in a static registry by component, so they can be read while a collection is
+ * processed. A profile leaves the registry and starts over when it is {@link #report() reported},
+ * and joins it again with the next question it records. Counts are updated with atomic increments,
+ * so a summary read while questions are recorded may mix a few of them.
+ */
+public final class PhaseProfile {
+
+  private static final ConcurrentMap<String, PhaseProfile> profiles =
+          new ConcurrentHashMap<String, PhaseProfile>();
+
+  private final String name;
+
+  private final Histogram unmarshal = new Histogram();
+
+  private final Histogram compute = new Histogram();
+
+  private final Histogram marshal = new Histogram();
+
+  private final AtomicLong inputElements = new AtomicLong();
+
+  private final AtomicLong outputElements = new AtomicLong();
+
+  private final AtomicLong casSize = new AtomicLong();
+
+  private final AtomicLong maxCasSize = new AtomicLong();
+
+  private volatile boolean registered;
+
+  private PhaseProfile(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the profile of the component, which is created if needed.
+   */
+  public static PhaseProfile forComponent(String name) {
+    PhaseProfile profile = profiles.get(name);
+    if (profile == null) {
+      PhaseProfile created = new PhaseProfile(name);
+      profile = profiles.putIfAbsent(name, created);
+      if (profile == null) {
+        profile = created;
+      }
+    }
+    profile.registered = true;
+    return profile;
+  }
+
+  public static Map<String, PhaseProfile> getProfiles() {
+    return Collections.unmodifiableMap(profiles);
+  }
+
+  /**
+   * Records the step times in nanoseconds of one question.
+   */
+  public void record(long unmarshalTime, long computeTime, long marshalTime, int inputs,
+          int outputs, int size) {
+    if (!registered) {
+      registered = true;
+      profiles.putIfAbsent(name, this);
+    }
+    unmarshal.add(unmarshalTime);
+    compute.add(computeTime);
+    marshal.add(marshalTime);
+    inputElements.addAndGet(inputs);
+    outputElements.addAndGet(outputs);
+    casSize.addAndGet(size);
+    updateMax(maxCasSize, size);
+  }
+
+  /**
+   * Returns the summary of the profile, then removes it from the registry and clears it, so that
+   * the profiles of a run are not carried over to the next one.
+   */
+  public String report() {
+    String summary = toString();
+    registered = false;
+    profiles.remove(name, this);
+    unmarshal.clear();
+    compute.clear();
+    marshal.clear();
+    inputElements.set(0);
+    outputElements.set(0);
+    casSize.set(0);
+    maxCasSize.set(0);
+    return summary;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Histogram getUnmarshal() {
+    return unmarshal;
+  }
+
+  public Histogram getCompute() {
+    return compute;
+  }
+
+  public Histogram getMarshal() {
+    return marshal;
+  }
+
+  public long getInputElements() {
+    return inputElements.get();
+  }
+
+  public long getOutputElements() {
+    return outputElements.get();
+  }
+
+  public double getMeanCasSize() {
+    long questions = compute.getCount();
+    return questions == 0 ? 0 : casSize.get() / (double) questions;
+  }
+
+  public int getMaxCasSize() {
+    return (int) maxCasSize.get();
+  }
+
+  @Override
+  public String toString() {
+    long questions = compute.getCount();
+    return String.format("%s\n  unmarshal: %s\n  compute:   %s\n  marshal:   %s\n"
+            + "  elements in/out per question: %.1f/%.1f, CAS size mean/max: %.0f/%d", name,
+            unmarshal, compute, marshal,
+            questions == 0 ? 0.0 : inputElements.get() / (double) questions,
+            questions == 0 ? 0.0 : outputElements.get() / (double) questions, getMeanCasSize(),
+            getMaxCasSize());
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+    }
+  }
+
+  private static void updateMin(AtomicLong min, long value) {
+    long current;
+    while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+    }
+  }
+
+  /**
+   * A histogram of latencies in nanoseconds, with a bucket per power of two.
+   */
+  public static final class Histogram {
+
+    // bucket i counts the latencies in [2^i, 2^(i+1)) ns, bucket 0 also counts 0
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    private final AtomicLong max = new AtomicLong();
+
+    void add(long nanos) {
+      nanos = Math.max(0, nanos);
+      buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+      count.incrementAndGet();
+      total.addAndGet(nanos);
+      updateMin(min, nanos);
+      updateMax(max, nanos);
+    }
+
+    void clear() {
+      for (int i = 0; i < buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+      count.set(0);
+      total.set(0);
+      min.set(Long.MAX_VALUE);
+      max.set(0);
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getTotal() {
+      return total.get();
+    }
+
+    public long getMin() {
+      return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    public double getMean() {
+      long n = count.get();
+      return n == 0 ? 0 : total.get() / (double) n;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, i.e. the end of the bucket it falls into, or
+     * the maximum if that is lower.
+     */
+    public long getPercentile(double percentile) {
+      long rank = (long) Math.ceil(percentile / 100 * count.get());
+      long max = this.max.get();
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= rank && seen > 0) {
+          return i >= 62 ? max : Math.min(max, (2L << i) - 1);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("n=%d mean=%.3fms p50<=%.3fms p95<=%.3fms p99<=%.3fms max=%.3fms",
+              getCount(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(95) / 1e6,
+              getPercentile(99) / 1e6, getMax() / 1e6);
+    }
+
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import edu.cmu.lti.oaqa.ecd.BaseExperimentBuilder;
+import edu.cmu.lti.oaqa.ecd.log.LogEntry;
+import edu.cmu.lti.oaqa.ecd.log.LogPersistenceProvider;
+import edu.cmu.lti.oaqa.ecd.phase.Trace;
+
+/**
+ * Sampling and asynchronous delivery of the log records of a phase.
+ * <p>
+ * A component asks {@link #sample()} once per question whether the question is logged, and skips
+ * building its messages otherwise. With "log-async" set, records are put in a bounded queue and
+ * written by a background thread to a {@link LogPersistenceProvider} of its own, loaded from the
+ * same "persistence-provider" parameter as the component's. Records are dropped, not waited for,
+ * when the queue is full, and the number of dropped records is reported to the UIMA logger of the
+ * component when the logger is closed.
+ */
+public final class QALogger {
+
+  private static final class Record {
+
+    final String uuid;
+
+    final Trace trace;
+
+    final LogEntry entry;
+
+    final String message;
+
+    Record(String uuid, Trace trace, LogEntry entry, String message) {
+      this.uuid = uuid;
+      this.trace = trace;
+      this.entry = entry;
+      this.message = message;
+    }
+
+  }
+
+  private static final Record CLOSE = new Record(null, null, null, null);
+
+  private final String name;
+
+  private final Logger log;
+
+  private final int period;
+
+  private final AtomicLong questions = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final LogPersistenceProvider persistence;
+
+  private final BlockingQueue<Record> queue;
+
+  private final Thread writer;
+
+  private QALogger(String name, Logger log, float rate, LogPersistenceProvider persistence,
+          int capacity) {
+    this.name = name;
+    this.log = log;
+    this.period = rate <= 0 ? 0 : Math.max(1, Math.round(1 / Math.min(rate, 1)));
+    this.persistence = persistence;
+    if (persistence == null) {
+      queue = null;
+      writer = null;
+      return;
+    }
+    queue = new ArrayBlockingQueue<Record>(capacity);
+    writer = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        write();
+      }
+    }, "QALogger-" + name);
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Creates the logger of a component from the parameters "log-sample-rate" (the fraction of the
+   * questions that are logged, 1 by default), "log-async" (false by default) and "log-queue-size"
+   * (the number of records waiting to be written, 1024 by default).
+   */
+  public static QALogger create(UimaContext c, String name) throws ResourceInitializationException {
+    float rate = UimaContextHelper.getConfigParameterFloatValue(c, "log-sample-rate", 1);
+    boolean async = UimaContextHelper.getConfigParameterBooleanValue(c, "log-async", false);
+    int capacity = UimaContextHelper.getConfigParameterIntValue(c, "log-queue-size", 1024);
+    LogPersistenceProvider persistence = null;
+    if (async && rate > 0) {
+      String provider = (String) c.getConfigParameterValue("persistence-provider");
+      persistence = BaseExperimentBuilder.loadProvider(provider, LogPersistenceProvider.class);
+    }
+    return new QALogger(name, c.getLogger(), rate, persistence, Math.max(1, capacity));
+  }
+
+  /**
+   * Decides whether the next question is logged. Every n-th question is, n being the inverse of
+   * the sampling rate, so that the records of a question are either all kept or all skipped.
+   */
+  public boolean sample() {
+    if (period <= 1) {
+      return period == 1;
+    }
+    return questions.getAndIncrement() % period == 0;
+  }
+
+  /**
+   * Queues a record if the logger is asynchronous, and returns <code>false</code> otherwise, in
+   * which case the caller is expected to write it itself.
+   */
+  public boolean append(String uuid, Trace trace, LogEntry entry, String message) {
+    if (queue == null) {
+      return false;
+    }
+    if (!queue.offer(new Record(uuid, trace, entry, message))) {
+      dropped.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Writes the queued records, releases the persistence provider of the logger and reports the
+   * records that were dropped.
+   */
+  public void close() {
+    if (queue == null || !writer.isAlive()) {
+      return;
+    }
+    try {
+      queue.put(CLOSE);
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (dropped.get() > 0) {
+      log.log(Level.WARNING, name + " dropped " + dropped.get() + " log records");
+    }
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void write() {
+    try {
+      Record record;
+      while ((record = queue.take()) != CLOSE) {
+        try {
+          persistence.log(record.uuid, record.trace, record.entry, record.message);
+        } catch (RuntimeException e) {
+          log.log(Level.WARNING, name + " could not write a log record", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      persistence.destroy();
+    }
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.jcas.JCas;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.cmu.lti.oaqa.framework.types.InputElement;
+
+/**
+ * Per-question time budgets shared by the phases that process a CAS.
+ * <p>
+ * The first phase that sees a question with a budget starts the clock, and the later phases
+ * working on the same question, in the same CAS, get the same deadline. A question is told apart
+ * by the address and sequence id of its {@link InputElement}, so a CAS that is reused for another
+ * question gets a new budget. The tasks of a component are run by a {@link Runner}, which gives up
+ * on them when the time left is over.
+ */
+public final class TimeBudget {
+
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  private static final class Budget {
+
+    final int input;
+
+    final String sequenceId;
+
+    final long deadline;
+
+    Budget(int input, String sequenceId, long deadline) {
+      this.input = input;
+      this.sequenceId = sequenceId;
+      this.deadline = deadline;
+    }
+
+  }
+
+  private static final Map<CAS, Budget> budgets = new WeakHashMap<CAS, Budget>();
+
+  private static final ExecutorService executor = Executors
+          .newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                  .setNameFormat("TimeBudget-%d").build());
+
+  private TimeBudget() {
+  }
+
+  /**
+   * Returns the deadline of the question in the CAS, in milliseconds since the epoch, starting a
+   * budget of <code>budget</code> milliseconds if there is none yet. A budget of 0 or less does not
+   * start one, and {@link #UNLIMITED} is returned if no phase has started one.
+   */
+  public static long getDeadline(JCas jcas, long budget) {
+    InputElement input = (InputElement) BaseJCasHelper.getAnnotation(jcas, InputElement.type);
+    int address = input == null ? 0 : input.getAddress();
+    String sequenceId = input == null ? null : input.getSequenceId();
+    synchronized (budgets) {
+      Budget current = budgets.get(jcas.getCas());
+      if (current != null && current.input == address
+              && (sequenceId == null ? current.sequenceId == null : sequenceId
+                      .equals(current.sequenceId))) {
+        return current.deadline;
+      }
+      if (budget <= 0) {
+        budgets.remove(jcas.getCas());
+        return UNLIMITED;
+      }
+      long deadline = System.currentTimeMillis() + budget;
+      budgets.put(jcas.getCas(), new Budget(address, sequenceId, deadline));
+      return deadline;
+    }
+  }
+
+  /**
+   * Returns the milliseconds left before the deadline, or {@link #UNLIMITED}.
+   */
+  public static long getRemainingTime(long deadline) {
+    return deadline == UNLIMITED ? UNLIMITED : Math.max(0, deadline
+            - System.currentTimeMillis());
+  }
+
+  /**
+   * Runs the tasks of a component one at a time. A task that is given up on is interrupted, but it
+   * may go on until it notices, so the next task waits for it to finish: the component is never
+   * called by two threads at once, as components are not written to be thread-safe. The wait is
+   * bounded by the deadline of the next task, which is given up on in turn if the wait runs out.
+   */
+  public static final class Runner {
+
+    // the task given up on last, counted down when it finishes
+    private CountDownLatch overrun;
+
+    // the milliseconds the task given up on last was given
+    private long overrunTimeout;
+
+    /**
+     * Runs the task and returns its result if it is done by the deadline. Otherwise the task is
+     * interrupted and a {@link TimeoutException} is thrown, as it is if the task given up on before
+     * is still running at the deadline. Without a deadline the task is run on the calling thread.
+     */
+    public <V> V call(final Callable<V> task, long deadline) throws Exception {
+      if (!await(deadline)) {
+        throw new TimeoutException();
+      }
+      long timeout = getRemainingTime(deadline);
+      if (timeout == UNLIMITED) {
+        return task.call();
+      }
+      if (timeout <= 0) {
+        throw new TimeoutException();
+      }
+      final AtomicBoolean started = new AtomicBoolean();
+      final CountDownLatch done = new CountDownLatch(1);
+      Future<V> future = executor.submit(new Callable<V>() {
+        @Override
+        public V call() throws Exception {
+          if (!started.compareAndSet(false, true)) {
+            return null;
+          }
+          try {
+            return task.call();
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+      try {
+        return future.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        if (!started.compareAndSet(false, true)) {
+          overrun = done;
+          overrunTimeout = timeout;
+        }
+        throw e;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        throw (Error) cause;
+      }
+    }
+
+    /**
+     * Waits until the deadline for the task given up on last, if it is still running, and returns
+     * whether it is done.
+     */
+    public boolean await(long deadline) throws InterruptedException {
+      if (overrun == null) {
+        return true;
+      }
+      if (deadline == UNLIMITED) {
+        overrun.await();
+      } else if (!overrun.await(getRemainingTime(deadline), TimeUnit.MILLISECONDS)) {
+        return false;
+      }
+      overrun = null;
+      return true;
+    }
+
+    /**
+     * Waits for the task given up on last, if it is still running, at most as long as the time it
+     * was given, and returns whether it is done.
+     */
+    public boolean await() throws InterruptedException {
+      return overrun == null || await(System.currentTimeMillis() + overrunTimeout);
+    }
+
+  }
+
+}
@@ -16,7 +16,15 @@
 
 package edu.cmu.lti.oaqa.framework;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
 
 public class UimaContextHelper {
 
@@ -85,4 +93,78 @@ public class UimaContextHelper {
       return new Object();
     }
   }
+
+  /**
+   * Returns a string of all the parameters of the context and their values, sorted by name, which
+   * identifies the configuration of a component.
+   */
+  public static String getConfigParameterSignature(UimaContext aContext) {
+    return getConfigParameterSignature(aContext, Collections.<String> emptySet());
+  }
+
+  /**
+   * Returns the signature of the parameters of the context, leaving out the excluded ones.
+   */
+  public static String getConfigParameterSignature(UimaContext aContext, Set<String> excluded) {
+    StringBuilder sb = new StringBuilder();
+    String[] names = aContext.getConfigParameterNames();
+    Arrays.sort(names);
+    for (String name : names) {
+      if (excluded.contains(name)) {
+        continue;
+      }
+      Object value = aContext.getConfigParameterValue(name);
+      sb.append('|').append(name).append('=').append(
+              value instanceof Object[] ? Arrays.toString((Object[]) value) : value);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reads a multi-valued parameter, or a single string parameter of comma separated values.
+   */
+  public static String[] getConfigParameterStringArrayValue(UimaContext aContext, String paramName,
+          String[] defaultValue) {
+    Object value = aContext.getConfigParameterValue(paramName);
+    if (value instanceof String[]) {
+      return (String[]) value;
+    } else if (value != null) {
+      String list = ((String) value).trim();
+      return list.length() == 0 ? new String[0] : list.split("\\s*,\\s*");
+    } else {
+      System.out.println(" * Parameter \"" + paramName + "\" cannot be found, use default value \""
+              + Arrays.toString(defaultValue) + "\" instead.");
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Creates an instance of each class named by a multi-valued parameter. Unlike
+   * {@link #getConfigParameterClassInstance(UimaContext, String, String)}, a class that cannot be
+   * instantiated is an error.
+   */
+  public static <T> List<T> getConfigParameterClassInstances(UimaContext aContext,
+          String paramName, Class<T> type) throws ResourceInitializationException {
+    String[] classNames = getConfigParameterStringArrayValue(aContext, paramName, new String[0]);
+    List<T> instances = new ArrayList<T>(classNames.length);
+    for (String className : classNames) {
+      try {
+        instances.add(type.cast(Class.forName(className).newInstance()));
+      } catch (Exception e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
+    return instances;
+  }
+
+  /**
+   * Returns a view of the context in which a parameter <code>name</code> is read from the
+   * parameter <code>prefix + name</code> if it is set, so that the components sharing a context can
+   * each be given their own values. Other parameters are read from <code>name</code>, except the
+   * local ones, which default to the given values instead of those of the context.
+   */
+  public static UimaContext getConfigParameterNamespace(UimaContext aContext, String prefix,
+          Map<String, ?> localDefaults) {
+    return new ConfigParameterNamespace(aContext, prefix, localDefaults);
+  }
 }
@@ -17,6 +17,7 @@
 package edu.cmu.lti.oaqa.framework.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -30,10 +31,20 @@ public class Article {
 
   private boolean legalspanSorted = false;
 
+  // the legal spans sorted and merged where they overlap or touch, built on first use
+  private int[] legalBegins;
+
+  private int[] legalEnds;
+
   private List<TextSpan> sentences = new ArrayList<TextSpan>();
 
   private boolean sentenceSorted = false;
 
+  // the begins and ends of the sorted sentences, built on first use
+  private int[] sentenceBegins;
+
+  private int[] sentenceEnds;
+
   public Article(String id, String documentText) {
     this.id = id;
     this.text = documentText;
@@ -41,6 +52,8 @@ public class Article {
 
   public void addLegalSpan(int begin, int end) {
     legalspanSorted = false;
+    legalBegins = null;
+    legalEnds = null;
     legalspans.add(new TextSpan(begin, end));
   }
 
@@ -49,25 +62,86 @@ public class Article {
     return legalspans;
   }
 
+  /**
+   * Returns the number of legal spans once overlapping and adjacent ones are merged.
+   */
+  public int getLegalSpanCount() {
+    packLegalSpansIfNeeded();
+    return legalBegins.length;
+  }
+
+  public int getLegalSpanBegin(int index) {
+    packLegalSpansIfNeeded();
+    return legalBegins[index];
+  }
+
+  public int getLegalSpanEnd(int index) {
+    packLegalSpansIfNeeded();
+    return legalEnds[index];
+  }
+
   public boolean isSpanLegal(TextSpan span) {
-    sortLegalSpansIfNeeded();
-    int index = Collections.binarySearch(legalspans, span);
-    // exactly a legal span
-    if (index >= 0) {
-      return true;
+    return isSpanLegal(span.begin, span.end);
+  }
+
+  /**
+   * Tells whether <code>[begin, end)</code> lies within the legal spans, taken as the union of the
+   * spans that were added.
+   */
+  public boolean isSpanLegal(int begin, int end) {
+    packLegalSpansIfNeeded();
+    int index = Arrays.binarySearch(legalBegins, begin);
+    // the last merged span that begins at or before "begin"
+    int covering = index >= 0 ? index : -index - 2;
+    return covering >= 0 && end <= legalEnds[covering];
+  }
+
+  /**
+   * Checks the legality of the first <code>count</code> spans given by <code>begins</code> and
+   * <code>ends</code>, writing the results to <code>legal</code>. When the spans are sorted by
+   * their begins, as passage candidates usually are, this is a single merge pass over the legal
+   * spans; a span that begins before the previous one is looked up by binary search instead.
+   */
+  public void checkSpansLegal(int[] begins, int[] ends, int count, boolean[] legal) {
+    packLegalSpansIfNeeded();
+    int covering = -1;
+    int previous = Integer.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      int begin = begins[i];
+      if (begin < previous) {
+        int index = Arrays.binarySearch(legalBegins, begin);
+        covering = index >= 0 ? index : -index - 2;
+      } else {
+        while (covering + 1 < legalBegins.length && legalBegins[covering + 1] <= begin) {
+          covering++;
+        }
+      }
+      previous = begin;
+      legal[i] = covering >= 0 && ends[i] <= legalEnds[covering];
     }
-    int insertPos = -index - 1;
-    // smaller than any existing legal span
-    if (insertPos == 0) {
-      return false;
+  }
+
+  /**
+   * Checks the legality of each of the spans, preferably sorted.
+   * 
+   * @see #checkSpansLegal(int[], int[], int, boolean[])
+   */
+  public boolean[] areSpansLegal(List<TextSpan> spans) {
+    int[] begins = new int[spans.size()];
+    int[] ends = new int[spans.size()];
+    for (int i = 0; i < begins.length; i++) {
+      begins[i] = spans.get(i).begin;
+      ends[i] = spans.get(i).end;
     }
-    // compare "end" with the previous legal span, as "begin" is guaranteed to be greater than or
-    // equal to that of the previous legal span.
-    return span.end <= legalspans.get(insertPos - 1).end;
+    boolean[] legal = new boolean[begins.length];
+    checkSpansLegal(begins, ends, begins.length, legal);
+    return legal;
   }
 
   public void addSentence(int begin, int end) {
     sentenceSorted = false;
+    sentenceBegins = null;
+    sentenceEnds = null;
     sentences.add(new TextSpan(begin, end));
   }
 
@@ -78,6 +152,27 @@ public class Article {
     }
   }
 
+  private void packLegalSpansIfNeeded() {
+    if (legalBegins != null) {
+      return;
+    }
+    sortLegalSpansIfNeeded();
+    int[] begins = new int[legalspans.size()];
+    int[] ends = new int[legalspans.size()];
+    int size = 0;
+    for (TextSpan span : legalspans) {
+      if (size > 0 && span.begin <= ends[size - 1]) {
+        ends[size - 1] = Math.max(ends[size - 1], span.end);
+      } else {
+        begins[size] = span.begin;
+        ends[size] = span.end;
+        size++;
+      }
+    }
+    legalEnds = Arrays.copyOf(ends, size);
+    legalBegins = Arrays.copyOf(begins, size);
+  }
+
   public List<TextSpan> getSentences() {
     sortSentencesIfNeeded();
     return sentences;
@@ -90,9 +185,152 @@ public class Article {
     }
   }
 
+  private void packSentencesIfNeeded() {
+    if (sentenceBegins != null) {
+      return;
+    }
+    sortSentencesIfNeeded();
+    int[] begins = new int[sentences.size()];
+    int[] ends = new int[sentences.size()];
+    for (int i = 0; i < begins.length; i++) {
+      begins[i] = sentences.get(i).begin;
+      ends[i] = sentences.get(i).end;
+    }
+    sentenceEnds = ends;
+    sentenceBegins = begins;
+  }
+
+  /*
+   * The sentence queries below use the order of getSentences() for the indexes and assume that the
+   * sentences do not overlap each other, so that their ends are sorted as well.
+   */
+
+  public int getSentenceCount() {
+    packSentencesIfNeeded();
+    return sentenceBegins.length;
+  }
+
+  public int getSentenceBegin(int index) {
+    packSentencesIfNeeded();
+    return sentenceBegins[index];
+  }
+
+  public int getSentenceEnd(int index) {
+    packSentencesIfNeeded();
+    return sentenceEnds[index];
+  }
+
+  /**
+   * Returns the index of the sentence that contains the character at <code>offset</code>, or -1 if
+   * it is outside every sentence.
+   */
+  public int getEnclosingSentence(int offset) {
+    packSentencesIfNeeded();
+    int index = Arrays.binarySearch(sentenceBegins, offset);
+    int candidate = index >= 0 ? index : -index - 2;
+    return candidate >= 0 && offset < sentenceEnds[candidate] ? candidate : -1;
+  }
+
+  /**
+   * Returns the index of the first sentence that overlaps <code>[begin, end)</code>, or the number
+   * of sentences if there is none; the overlapping sentences run from there to
+   * {@link #getOverlappingSentencesEnd(int, int)}.
+   */
+  public int getOverlappingSentencesBegin(int begin, int end) {
+    packSentencesIfNeeded();
+    // the first sentence that ends after "begin"
+    int index = Arrays.binarySearch(sentenceEnds, begin);
+    int first = index >= 0 ? index + 1 : -index - 1;
+    while (first < sentenceEnds.length && sentenceEnds[first] <= begin) {
+      first++;
+    }
+    return first < sentenceBegins.length && sentenceBegins[first] < end ? first
+            : sentenceBegins.length;
+  }
+
+  /**
+   * Returns one past the index of the last sentence that overlaps <code>[begin, end)</code>.
+   */
+  public int getOverlappingSentencesEnd(int begin, int end) {
+    int first = getOverlappingSentencesBegin(begin, end);
+    if (first == sentenceBegins.length) {
+      return first;
+    }
+    // the first sentence that begins at or after "end"
+    int index = Arrays.binarySearch(sentenceBegins, first, sentenceBegins.length, end);
+    int last = index >= 0 ? index : -index - 1;
+    while (last > first && sentenceBegins[last - 1] >= end) {
+      last--;
+    }
+    return last;
+  }
+
+  /**
+   * Returns the sentences that overlap <code>[begin, end)</code>, as a view of
+   * {@link #getSentences()}.
+   */
+  public List<TextSpan> getOverlappingSentences(int begin, int end) {
+    return getSentences().subList(getOverlappingSentencesBegin(begin, end),
+            getOverlappingSentencesEnd(begin, end));
+  }
+
+  /**
+   * Returns the sentence that contains the character at <code>offset</code> together with up to
+   * <code>k</code> sentences on each side, as a view of {@link #getSentences()}, which is empty if
+   * the offset is outside every sentence.
+   */
+  public List<TextSpan> getNeighborSentences(int offset, int k) {
+    int index = getEnclosingSentence(offset);
+    if (index < 0) {
+      return getSentences().subList(0, 0);
+    }
+    return getSentences().subList(Math.max(0, index - k),
+            Math.min(sentenceBegins.length, index + k + 1));
+  }
+
+  /**
+   * Returns a cursor over the windows of <code>width</code> consecutive sentences, which moves
+   * one sentence at a time and does not allocate while it moves.
+   */
+  public SentenceWindowCursor getSentenceWindows(int width) {
+    packSentencesIfNeeded();
+    return new SentenceWindowCursor(sentenceBegins, sentenceEnds, width);
+  }
+
+  /**
+   * Sets the merged legal spans and the sorted sentences directly, for articles that are read from
+   * a store rather than built span by span.
+   */
+  void setPackedSpans(int[] legalBegins, int[] legalEnds, int[] sentenceBegins,
+          int[] sentenceEnds) {
+    this.legalEnds = legalEnds;
+    this.legalBegins = legalBegins;
+    this.sentenceEnds = sentenceEnds;
+    this.sentenceBegins = sentenceBegins;
+  }
+
   public String getSpanText(TextSpan span) {
     return text.substring(span.begin, span.end);
   }
+
+  /**
+   * Returns the text as a character sequence, which is not a copy of it.
+   */
+  public CharSequence getTextSequence() {
+    return text;
+  }
+
+  /**
+   * Returns a view of the span of the text, which does not copy it and can be moved to other spans
+   * with {@link SpanView#set(int, int)}.
+   */
+  public SpanView getSpanView(int begin, int end) {
+    return new SpanView(getTextSequence(), begin, end);
+  }
+
+  public SpanView getSpanView(TextSpan span) {
+    return getSpanView(span.begin, span.end);
+  }
   
   public String getId() {
     return id;
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+/**
+ * The document id (URI) dictionary of the current run. {@link RetrievalResult}s,
+ * {@link PassageCandidate}s and {@link ResultBatch}es look their document ids up here, so that
+ * documents can be compared and hashed by their ordinals.
+ * <p>
+ * The phases call {@link #startRun(String)} with the experiment they process, and the dictionary
+ * is replaced by an empty one when the experiment changes, so it only grows with the number of
+ * distinct documents of a run. {@link #reset()} does the same explicitly. Ordinals are only
+ * comparable within one dictionary; wrappers look theirs up again after a replacement.
+ */
+public final class DocIdDictionary extends StringDictionary {
+
+  private static volatile DocIdDictionary instance = new DocIdDictionary(null);
+
+  private final String run;
+
+  private DocIdDictionary(String run) {
+    this.run = run;
+  }
+
+  public static DocIdDictionary getInstance() {
+    return instance;
+  }
+
+  /**
+   * Makes the dictionary that of the run, replacing it by an empty one if it belongs to another
+   * run.
+   */
+  public static void startRun(String run) {
+    if (run != null && !run.equals(instance.run)) {
+      synchronized (DocIdDictionary.class) {
+        if (!run.equals(instance.run)) {
+          instance = new DocIdDictionary(run);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the dictionary by an empty one, releasing the ids of the current run.
+   */
+  public static synchronized void reset() {
+    instance = new DocIdDictionary(instance.run);
+  }
+
+}
@@ -18,7 +18,6 @@ package edu.cmu.lti.oaqa.framework.data;
 
 import java.io.Serializable;
 
-import org.apache.uima.jcas.JCas;
 import org.oaqa.model.QueryConcept;
 
 import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
@@ -60,10 +59,9 @@ public class Keyterm extends BaseAnnotationWrapper<QueryConcept> implements Seri
   }
 
   @Override
-  public QueryConcept unwrap(JCas jcas) throws Exception {
-    QueryConcept keyterm = super.unwrap(jcas);
+  public void unwrapInto(QueryConcept keyterm) {
+    super.unwrapInto(keyterm);
     keyterm.setText(text);
-    return keyterm;
   }
 
   @Override
@@ -54,14 +54,23 @@ public class KeytermList extends FSListWrapper<QueryConcept> {
     setList(keyterms);
   }
 
+  public void setKeyterms(List<Keyterm> keyterms, boolean preserveOrder) throws Exception {
+    setList(keyterms, preserveOrder);
+  }
+
   public static void storeKeyterms(JCas jcas, List<Keyterm> keyterms) throws Exception {
     new KeytermList(jcas).setKeyterms(keyterms);
   }
 
+  public static void storeKeyterms(JCas jcas, List<Keyterm> keyterms, boolean preserveOrder)
+          throws Exception {
+    new KeytermList(jcas).setKeyterms(keyterms, preserveOrder);
+  }
+
   public List<Keyterm> getKeyterms() throws AnalysisEngineProcessException {
     AbstractQuery query = (AbstractQuery) BaseJCasHelper.getFS(jcas, AbstractQuery.type);
     if (query != null) {
-      list = query.getConcepts();
+      setFSList(query.getConcepts());
       return getList(QueryConcept.class, Keyterm.class);
     } else {
       return new ArrayList<Keyterm>();
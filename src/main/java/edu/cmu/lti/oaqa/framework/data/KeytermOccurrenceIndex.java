@@ -0,0 +1,261 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The positions of the tokens of an {@link Article}, so that the occurrences of keyterms in it are
+ * looked up instead of searched for in the text.
+ * <p>
+ * The text is split by a {@link SpanTokenizer}, and each token, in lower case, is mapped to the
+ * sorted offsets at which it occurs and to its ordinals among the tokens. A term of several
+ * tokens is matched as a phrase: its occurrences are those of its first token that are followed
+ * by the rest of its tokens. The indexes are built on first use by {@link #forArticle(Article)}
+ * and kept in a cache keyed by article id, which holds 1000 of them unless
+ * {@link #setCacheSize(int)} says otherwise.
+ */
+public final class KeytermOccurrenceIndex {
+
+  private static final int[] NONE = new int[0];
+
+  private static volatile Cache<String, KeytermOccurrenceIndex> cache = createCache(1000);
+
+  private final Map<String, Postings> postings = new HashMap<String, Postings>();
+
+  private final int tokenCount;
+
+  public KeytermOccurrenceIndex(Article article) {
+    CharSequence text = article.getTextSequence();
+    SpanTokenizer tokenizer = new SpanTokenizer().reset(text, 0, text.length());
+    int ordinal = 0;
+    while (tokenizer.next()) {
+      String key = normalize(text, tokenizer.getBegin(), tokenizer.getEnd());
+      Postings list = postings.get(key);
+      if (list == null) {
+        list = new Postings();
+        postings.put(key, list);
+      }
+      list.add(tokenizer.getBegin(), ordinal++);
+    }
+    for (Postings list : postings.values()) {
+      list.trim();
+    }
+    tokenCount = ordinal;
+  }
+
+  /**
+   * Returns the index of the article from the cache, building it if it is not there.
+   */
+  public static KeytermOccurrenceIndex forArticle(Article article) {
+    Cache<String, KeytermOccurrenceIndex> indexes = cache;
+    KeytermOccurrenceIndex index = indexes.getIfPresent(article.getId());
+    if (index == null) {
+      index = new KeytermOccurrenceIndex(article);
+      indexes.put(article.getId(), index);
+    }
+    return index;
+  }
+
+  /**
+   * Replaces the cache of the indexes by an empty one that holds up to <code>size</code> of them.
+   */
+  public static synchronized void setCacheSize(int size) {
+    cache = createCache(size);
+  }
+
+  private static Cache<String, KeytermOccurrenceIndex> createCache(int size) {
+    return CacheBuilder.newBuilder().maximumSize(size).build();
+  }
+
+  public int getTokenCount() {
+    return tokenCount;
+  }
+
+  /**
+   * Returns the sorted offsets at which the term occurs in the text, ignoring case. The array may
+   * be shared by the index and must not be modified.
+   */
+  public int[] getOffsets(CharSequence term) {
+    SpanTokenizer tokenizer = new SpanTokenizer().reset(term, 0, term.length());
+    if (!tokenizer.next()) {
+      return NONE;
+    }
+    Postings first = postings.get(normalize(term, tokenizer.getBegin(), tokenizer.getEnd()));
+    if (first == null) {
+      return NONE;
+    }
+    if (!tokenizer.next()) {
+      return first.offsets;
+    }
+    // keep the occurrences of the first token that the other tokens follow
+    boolean[] matched = new boolean[first.size];
+    Arrays.fill(matched, true);
+    int following = 1;
+    do {
+      Postings next = postings.get(normalize(term, tokenizer.getBegin(), tokenizer.getEnd()));
+      if (next == null) {
+        return NONE;
+      }
+      for (int i = 0; i < first.size; i++) {
+        matched[i] &= Arrays.binarySearch(next.ordinals, first.ordinals[i] + following) >= 0;
+      }
+      following++;
+    } while (tokenizer.next());
+    int count = 0;
+    for (boolean match : matched) {
+      count += match ? 1 : 0;
+    }
+    int[] offsets = new int[count];
+    for (int i = 0, j = 0; i < first.size; i++) {
+      if (matched[i]) {
+        offsets[j++] = first.offsets[i];
+      }
+    }
+    return offsets;
+  }
+
+  public int[] getOffsets(Keyterm keyterm) {
+    return getOffsets(keyterm.getText());
+  }
+
+  /**
+   * Returns an iterator over the occurrences of all the keyterms, in the order of their offsets.
+   */
+  public OccurrenceIterator iterator(List<Keyterm> keyterms) {
+    int[][] offsets = new int[keyterms.size()][];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = getOffsets(keyterms.get(i));
+    }
+    return new OccurrenceIterator(offsets);
+  }
+
+  /**
+   * Returns an iterator over the occurrences of all the terms, in the order of their offsets.
+   */
+  public OccurrenceIterator iterator(CharSequence... terms) {
+    int[][] offsets = new int[terms.length][];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = getOffsets(terms[i]);
+    }
+    return new OccurrenceIterator(offsets);
+  }
+
+  private static String normalize(CharSequence text, int begin, int end) {
+    StringBuilder sb = new StringBuilder(end - begin);
+    for (int i = begin; i < end; i++) {
+      sb.append(Character.toLowerCase(text.charAt(i)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Merges the sorted offset lists of several terms. Occurrences at the same offset come in the
+   * order of the terms.
+   */
+  public static final class OccurrenceIterator {
+
+    private final int[][] offsets;
+
+    private final int[] next;
+
+    private int term = -1;
+
+    private int offset = -1;
+
+    OccurrenceIterator(int[][] offsets) {
+      this.offsets = offsets;
+      this.next = new int[offsets.length];
+    }
+
+    /**
+     * Moves to the next occurrence, and returns <code>false</code> if there is none.
+     */
+    public boolean next() {
+      term = -1;
+      for (int i = 0; i < offsets.length; i++) {
+        if (next[i] < offsets[i].length
+                && (term < 0 || offsets[i][next[i]] < offsets[term][next[term]])) {
+          term = i;
+        }
+      }
+      if (term < 0) {
+        offset = -1;
+        return false;
+      }
+      offset = offsets[term][next[term]++];
+      return true;
+    }
+
+    /**
+     * Moves back to before the first occurrence.
+     */
+    public void reset() {
+      Arrays.fill(next, 0);
+      term = -1;
+      offset = -1;
+    }
+
+    /**
+     * Returns the offset of the current occurrence in the text.
+     */
+    public int getOffset() {
+      return offset;
+    }
+
+    /**
+     * Returns the index of the term of the current occurrence, in the order they were given.
+     */
+    public int getTerm() {
+      return term;
+    }
+
+  }
+
+  private static final class Postings {
+
+    int[] offsets = new int[4];
+
+    int[] ordinals = new int[4];
+
+    int size;
+
+    void add(int offset, int ordinal) {
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, 2 * size);
+        ordinals = Arrays.copyOf(ordinals, 2 * size);
+      }
+      offsets[size] = offset;
+      ordinals[size] = ordinal;
+      size++;
+    }
+
+    void trim() {
+      offsets = Arrays.copyOf(offsets, size);
+      ordinals = Arrays.copyOf(ordinals, size);
+    }
+
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read-only {@link Article} whose text is a view of a memory-mapped store, so that the text is
+ * only read from the page cache when it is used, and only the requested span is copied by
+ * {@link #getSpanText(TextSpan)}. The legal spans and sentences are given as packed arrays; the
+ * legal spans are the merged ones, which is also what {@link #getLegalSpans()} returns.
+ */
+public class MappedArticle extends Article {
+
+  private final CharBuffer text;
+
+  private List<TextSpan> legalspans;
+
+  private List<TextSpan> sentences;
+
+  public MappedArticle(String id, CharBuffer text, int[] legalBegins, int[] legalEnds,
+          int[] sentenceBegins, int[] sentenceEnds) {
+    super(id, null);
+    this.text = text.asReadOnlyBuffer();
+    setPackedSpans(legalBegins, legalEnds, sentenceBegins, sentenceEnds);
+  }
+
+  @Override
+  public void addLegalSpan(int begin, int end) {
+    throw new UnsupportedOperationException("Mapped article " + getId() + " is read-only");
+  }
+
+  @Override
+  public void addSentence(int begin, int end) {
+    throw new UnsupportedOperationException("Mapped article " + getId() + " is read-only");
+  }
+
+  @Override
+  public List<TextSpan> getLegalSpans() {
+    if (legalspans == null) {
+      List<TextSpan> spans = new ArrayList<TextSpan>();
+      for (int i = 0; i < getLegalSpanCount(); i++) {
+        spans.add(new TextSpan(getLegalSpanBegin(i), getLegalSpanEnd(i)));
+      }
+      legalspans = Collections.unmodifiableList(spans);
+    }
+    return legalspans;
+  }
+
+  @Override
+  public List<TextSpan> getSentences() {
+    if (sentences == null) {
+      List<TextSpan> spans = new ArrayList<TextSpan>();
+      for (int i = 0; i < getSentenceCount(); i++) {
+        spans.add(new TextSpan(getSentenceBegin(i), getSentenceEnd(i)));
+      }
+      sentences = Collections.unmodifiableList(spans);
+    }
+    return sentences;
+  }
+
+  @Override
+  public String getSpanText(TextSpan span) {
+    return text.subSequence(span.begin, span.end).toString();
+  }
+
+  @Override
+  public CharSequence getTextSequence() {
+    return text.duplicate();
+  }
+
+  /**
+   * Returns the whole text, which is copied to the heap on each call.
+   */
+  @Override
+  public String getText() {
+    return text.toString();
+  }
+
+}
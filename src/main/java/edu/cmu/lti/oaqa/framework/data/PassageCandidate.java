@@ -19,7 +19,6 @@ package edu.cmu.lti.oaqa.framework.data;
 import java.io.Serializable;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
-import org.apache.uima.jcas.JCas;
 import org.oaqa.model.Passage;
 
 import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
@@ -35,6 +34,11 @@ public class PassageCandidate extends BaseAnnotationWrapper<Passage> implements
 
   private String docID;
 
+  // the dictionary the ordinal was looked up in, null if it has not been looked up yet
+  private transient DocIdDictionary ordinalDictionary;
+
+  private transient int docOrdinal;
+
   private int start;
 
   private int end;
@@ -99,6 +103,21 @@ public class PassageCandidate extends BaseAnnotationWrapper<Passage> implements
 
   public void setDocID(String docID) {
     this.docID = docID;
+    this.ordinalDictionary = null;
+  }
+
+  /**
+   * Returns the id of the document in the {@link DocIdDictionary}, or -1 if there is no document id.
+   * Candidates from the same document have the same ordinal, so it can be used instead of the docID
+   * for comparing and hashing.
+   */
+  public int getDocOrdinal() {
+    DocIdDictionary docIds = DocIdDictionary.getInstance();
+    if (ordinalDictionary != docIds) {
+      docOrdinal = docIds.intern(docID);
+      ordinalDictionary = docIds;
+    }
+    return docOrdinal;
   }
 
   public int getStart() {
@@ -137,6 +156,7 @@ public class PassageCandidate extends BaseAnnotationWrapper<Passage> implements
   public void wrap(Passage passage) {
     super.wrap(passage);
     docID = passage.getUri();
+    ordinalDictionary = null;
     start = passage.getBegin();
     end = passage.getEnd();
     rank = passage.getRank();
@@ -144,14 +164,13 @@ public class PassageCandidate extends BaseAnnotationWrapper<Passage> implements
   }
 
   @Override
-  public Passage unwrap(JCas jcas) throws Exception {
-    Passage passage = super.unwrap(jcas);
+  public void unwrapInto(Passage passage) {
+    super.unwrapInto(passage);
     passage.setUri(docID);
     passage.setBegin(start);
     passage.setEnd(end);
     passage.setRank(rank);
     passage.setQueryString(queryString);
-    return passage;
   }
 
   @Override
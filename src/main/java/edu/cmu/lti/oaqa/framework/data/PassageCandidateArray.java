@@ -27,6 +27,7 @@ import org.oaqa.model.Search;
 
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.data.base.FSArrayWrapper;
+import edu.cmu.lti.oaqa.framework.data.base.TopKSelection;
 
 public class PassageCandidateArray extends FSArrayWrapper<Passage> {
 
@@ -52,6 +53,22 @@ public class PassageCandidateArray extends FSArrayWrapper<Passage> {
 
   public void setPassageCandidates(List<PassageCandidate> results) throws Exception {
     Collections.sort(results, Collections.reverseOrder());
+    assignRanks(results);
+    setArray(results);
+  }
+
+  /**
+   * Stores only the <code>limit</code> highest scored results, selected without sorting the whole
+   * list. The ranks are the same as those assigned by {@link #setPassageCandidates(List)}. The array
+   * should be created with a length of <code>min(results.size(), limit)</code>.
+   */
+  public void setPassageCandidates(List<PassageCandidate> results, int limit) throws Exception {
+    List<PassageCandidate> top = TopKSelection.select(results, limit);
+    assignRanks(top);
+    setArray(top);
+  }
+
+  private static void assignRanks(List<PassageCandidate> results) {
     double prevScore = Double.NaN;
     int prevRank = 0;
     for (int i = 0; i < results.size(); i++) {
@@ -65,7 +82,6 @@ public class PassageCandidateArray extends FSArrayWrapper<Passage> {
         candidate.setRank(prevRank);
       }
     }
-    setArray(results);
   }
 
   public static void storePassageCandidates(JCas jcas, List<PassageCandidate> results)
@@ -73,6 +89,15 @@ public class PassageCandidateArray extends FSArrayWrapper<Passage> {
     new PassageCandidateArray(jcas, results.size()).setPassageCandidates(results);
   }
 
+  public static void storePassageCandidates(JCas jcas, List<PassageCandidate> results, int limit)
+          throws Exception {
+    if (limit >= results.size()) {
+      storePassageCandidates(jcas, results);
+    } else {
+      new PassageCandidateArray(jcas, Math.max(limit, 0)).setPassageCandidates(results, limit);
+    }
+  }
+
   public List<PassageCandidate> getPassageCandidates() throws Exception {
     Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
     if (search != null) {
@@ -87,4 +112,65 @@ public class PassageCandidateArray extends FSArrayWrapper<Passage> {
     return new PassageCandidateArray(jcas, 0).getPassageCandidates();
   }
 
+  /**
+   * Reads the stored passage candidates like {@link #getPassageCandidates()}, and keeps track of the
+   * hit each of them was created from, for a later {@link #updatePassageCandidates(List, int)}.
+   */
+  public List<PassageCandidate> getPassageCandidatesForUpdate() throws Exception {
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    if (search != null) {
+      array = search.getHitList();
+      return getArray(Passage.class, PassageCandidate.class, true);
+    } else {
+      return new ArrayList<PassageCandidate>();
+    }
+  }
+
+  /**
+   * Stores the passage candidates like {@link #storePassageCandidates(JCas, List, int)}, but
+   * writes them back into the hits read by {@link #getPassageCandidatesForUpdate()}. Hits that are
+   * still in the list are modified in place and only new hits are allocated. The
+   * existing {@link Search} is kept, and its hit list is only replaced if the number of hits
+   * changes.
+   * 
+   * @return the number of newly allocated hits
+   */
+  public int updatePassageCandidates(List<PassageCandidate> results, int limit) throws Exception {
+    List<PassageCandidate> top;
+    if (limit >= results.size()) {
+      Collections.sort(results, Collections.reverseOrder());
+      top = results;
+    } else {
+      top = TopKSelection.select(results, limit);
+    }
+    assignRanks(top);
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    int created = updateArray(top);
+    if (search != null) {
+      search.setHitList(array);
+    } else {
+      complete();
+    }
+    return created;
+  }
+
+  /**
+   * Returns a fixed-size view of the stored passage candidates that wraps each hit on first
+   * access, which is cheaper than {@link #getPassageCandidates()} when only a prefix of the list is read.
+   * The view is empty if nothing is stored.
+   */
+  public List<PassageCandidate> getPassageCandidatesView() throws Exception {
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    if (search != null) {
+      array = search.getHitList();
+      return getArrayView(Passage.class, PassageCandidate.class);
+    } else {
+      return Collections.emptyList();
+    }
+  }
+
+  public static List<PassageCandidate> retrievePassageCandidatesView(JCas jcas) throws Exception {
+    return new PassageCandidateArray(jcas, 0).getPassageCandidatesView();
+  }
+
 }
@@ -0,0 +1,378 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+import org.oaqa.model.Passage;
+import org.oaqa.model.Search;
+
+import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
+import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
+
+/**
+ * A struct-of-arrays alternative to lists of {@link RetrievalResult}s or {@link PassageCandidate}s.
+ * Each hit is a row of parallel columns: a document ordinal into a {@link StringDictionary}, a float
+ * score, begin and end offsets, a rank and a dictionary-coded query string. {@link #sort()},
+ * {@link #rank()} and {@link #truncate(int)} work in place and do not allocate.
+ * <p>
+ * The adapters carry the document id, score, offsets, rank and query string of each hit; the
+ * implementing wrapper and component id of the wrappers are not kept.
+ */
+public class ResultBatch {
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private final StringDictionary docIds;
+
+  private final StringDictionary queryStrings = new StringDictionary();
+
+  private int size;
+
+  private int[] docs;
+
+  private float[] scores;
+
+  private int[] begins;
+
+  private int[] ends;
+
+  private int[] ranks;
+
+  private int[] queries;
+
+  // order of the rows as of the last sort, or of their insertion since, used to break ties so
+  // that sorting is equivalent to a stable sort
+  private int[] sequence;
+
+  public ResultBatch(StringDictionary docIds, int capacity) {
+    this.docIds = docIds;
+    capacity = Math.max(capacity, 1);
+    docs = new int[capacity];
+    scores = new float[capacity];
+    begins = new int[capacity];
+    ends = new int[capacity];
+    ranks = new int[capacity];
+    queries = new int[capacity];
+    sequence = new int[capacity];
+  }
+
+  /**
+   * Creates a batch whose document ordinals are those of the run's {@link DocIdDictionary}.
+   */
+  public ResultBatch(int capacity) {
+    this(DocIdDictionary.getInstance(), capacity);
+  }
+
+  public int add(String docId, float score, int begin, int end, int rank, String queryString) {
+    if (size == docs.length) {
+      grow();
+    }
+    int i = size++;
+    docs[i] = docIds.intern(docId);
+    scores[i] = score;
+    begins[i] = begin;
+    ends[i] = end;
+    ranks[i] = rank;
+    queries[i] = queryStrings.intern(queryString);
+    sequence[i] = i;
+    return i;
+  }
+
+  private void grow() {
+    int capacity = docs.length * 2;
+    docs = Arrays.copyOf(docs, capacity);
+    scores = Arrays.copyOf(scores, capacity);
+    begins = Arrays.copyOf(begins, capacity);
+    ends = Arrays.copyOf(ends, capacity);
+    ranks = Arrays.copyOf(ranks, capacity);
+    queries = Arrays.copyOf(queries, capacity);
+    sequence = Arrays.copyOf(sequence, capacity);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public StringDictionary getDocIds() {
+    return docIds;
+  }
+
+  public int getDocOrdinal(int i) {
+    return docs[i];
+  }
+
+  public String getDocId(int i) {
+    return docIds.get(docs[i]);
+  }
+
+  public float getScore(int i) {
+    return scores[i];
+  }
+
+  public void setScore(int i, float score) {
+    scores[i] = score;
+  }
+
+  public int getBegin(int i) {
+    return begins[i];
+  }
+
+  public int getEnd(int i) {
+    return ends[i];
+  }
+
+  public int getRank(int i) {
+    return ranks[i];
+  }
+
+  public String getQueryString(int i) {
+    return queryStrings.get(queries[i]);
+  }
+
+  public static ResultBatch fromRetrievalResults(List<RetrievalResult> results,
+          StringDictionary docIds) {
+    ResultBatch batch = new ResultBatch(docIds, results.size());
+    for (RetrievalResult result : results) {
+      batch.add(result.getDocID(), result.getProbability(), 0, 0, result.getRank(),
+              result.getQueryString());
+    }
+    return batch;
+  }
+
+  public static ResultBatch fromPassageCandidates(List<PassageCandidate> candidates,
+          StringDictionary docIds) {
+    ResultBatch batch = new ResultBatch(docIds, candidates.size());
+    for (PassageCandidate candidate : candidates) {
+      batch.add(candidate.getDocID(), candidate.getProbability(), candidate.getStart(),
+              candidate.getEnd(), candidate.getRank(), candidate.getQueryString());
+    }
+    return batch;
+  }
+
+  /**
+   * Reads the hit list of the {@link Search} stored in the view directly from the {@link Passage}
+   * feature structures, without creating wrappers.
+   */
+  public static ResultBatch fromSearch(JCas view, StringDictionary docIds) {
+    Search search = (Search) BaseJCasHelper.getFS(view, Search.type);
+    if (search == null) {
+      return new ResultBatch(docIds, 0);
+    }
+    FSArray hitList = search.getHitList();
+    ResultBatch batch = new ResultBatch(docIds, hitList.size());
+    for (int i = 0; i < hitList.size(); i++) {
+      Passage passage = (Passage) hitList.get(i);
+      batch.add(passage.getUri(), passage.getProbability(), passage.getBegin(), passage.getEnd(),
+              passage.getRank(), passage.getQueryString());
+    }
+    return batch;
+  }
+
+  public List<RetrievalResult> toRetrievalResults() {
+    List<RetrievalResult> results = new ArrayList<RetrievalResult>(size);
+    for (int i = 0; i < size; i++) {
+      RetrievalResult result = new RetrievalResult(getDocId(i), scores[i], getQueryString(i));
+      result.setRank(ranks[i]);
+      results.add(result);
+    }
+    return results;
+  }
+
+  public List<PassageCandidate> toPassageCandidates() throws AnalysisEngineProcessException {
+    List<PassageCandidate> candidates = new ArrayList<PassageCandidate>(size);
+    for (int i = 0; i < size; i++) {
+      PassageCandidate candidate = new PassageCandidate(getDocId(i), begins[i], ends[i],
+              scores[i], getQueryString(i));
+      candidate.setRank(ranks[i]);
+      candidates.add(candidate);
+    }
+    return candidates;
+  }
+
+  /**
+   * Replaces the {@link Search} in the view with one whose hit list holds the rows in their current
+   * order, as {@link RetrievalResultArray} and {@link PassageCandidateArray} do. The Passages are
+   * marked with the given implementing wrapper so that they can be read back as wrappers.
+   */
+  public void store(JCas view, Class<? extends BaseAnnotationWrapper<Passage>> wrapperClass) {
+    Iterator<?> it = view.getJFSIndexRepository().getAllIndexedFS(Search.type);
+    while (it.hasNext()) {
+      ((Search) it.next()).removeFromIndexes();
+    }
+    String implementingWrapper = wrapperClass.getCanonicalName();
+    FSArray hitList = new FSArray(view, size);
+    for (int i = 0; i < size; i++) {
+      Passage passage = new Passage(view);
+      passage.setImplementingWrapper(implementingWrapper);
+      passage.setProbability(scores[i]);
+      passage.setUri(getDocId(i));
+      passage.setBegin(begins[i]);
+      passage.setEnd(ends[i]);
+      passage.setRank(ranks[i]);
+      passage.setQueryString(getQueryString(i));
+      hitList.set(i, passage);
+    }
+    Search search = new Search(view);
+    search.setHitList(hitList);
+    search.addToIndexes();
+  }
+
+  /**
+   * Sorts the rows by descending score. Rows with equal scores keep their relative order, and the
+   * rows added afterwards come after them in case of ties.
+   */
+  public void sort() {
+    sort(0, size);
+    for (int i = 0; i < size; i++) {
+      sequence[i] = i;
+    }
+  }
+
+  /**
+   * Assigns ranks to the rows in their current order, giving rows with equal scores the same rank,
+   * as {@link RetrievalResultArray#setRetrievalResults(List)} does.
+   */
+  public void rank() {
+    int prevRank = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || scores[i] != scores[i - 1]) {
+        prevRank = i + 1;
+      }
+      ranks[i] = prevRank;
+    }
+  }
+
+  /**
+   * Keeps the <code>k</code> highest scored rows, sorted and ranked. Only the retained prefix is
+   * sorted; the selection itself is a quickselect over the whole batch.
+   */
+  public void truncate(int k) {
+    k = Math.max(k, 0);
+    if (k < size) {
+      select(0, size, k);
+      size = k;
+    }
+    sort();
+    rank();
+  }
+
+  private boolean before(int a, int b) {
+    if (scores[a] != scores[b]) {
+      return scores[a] > scores[b];
+    }
+    return sequence[a] < sequence[b];
+  }
+
+  private void swap(int a, int b) {
+    int t = docs[a];
+    docs[a] = docs[b];
+    docs[b] = t;
+    float f = scores[a];
+    scores[a] = scores[b];
+    scores[b] = f;
+    t = begins[a];
+    begins[a] = begins[b];
+    begins[b] = t;
+    t = ends[a];
+    ends[a] = ends[b];
+    ends[b] = t;
+    t = ranks[a];
+    ranks[a] = ranks[b];
+    ranks[b] = t;
+    t = queries[a];
+    queries[a] = queries[b];
+    queries[b] = t;
+    t = sequence[a];
+    sequence[a] = sequence[b];
+    sequence[b] = t;
+  }
+
+  private void sort(int from, int to) {
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      int p = partition(from, to);
+      // recurse into the smaller part to bound the stack depth
+      if (p - from < to - p - 1) {
+        sort(from, p);
+        from = p + 1;
+      } else {
+        sort(p + 1, to);
+        to = p;
+      }
+    }
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && before(j, j - 1); j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * Rearranges [from, to) so that the rows before position <code>k</code> are the best ones.
+   */
+  private void select(int from, int to, int k) {
+    while (to - from > 1) {
+      int p = partition(from, to);
+      if (p == k) {
+        return;
+      } else if (p < k) {
+        from = p + 1;
+      } else {
+        to = p;
+      }
+    }
+  }
+
+  /**
+   * Partitions [from, to) around a median-of-three pivot and returns the pivot's final position.
+   */
+  private int partition(int from, int to) {
+    int mid = (from + to) >>> 1;
+    int last = to - 1;
+    if (before(mid, from)) {
+      swap(mid, from);
+    }
+    if (before(last, from)) {
+      swap(last, from);
+    }
+    if (before(last, mid)) {
+      swap(last, mid);
+    }
+    // the median is now at mid; park it at the end
+    swap(mid, last);
+    int store = from;
+    for (int i = from; i < last; i++) {
+      if (before(i, last)) {
+        swap(i, store++);
+      }
+    }
+    swap(store, last);
+    return store;
+  }
+
+}
@@ -18,7 +18,6 @@ package edu.cmu.lti.oaqa.framework.data;
 
 import java.io.Serializable;
 
-import org.apache.uima.jcas.JCas;
 import org.oaqa.model.Passage;
 
 import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
@@ -29,6 +28,11 @@ public class RetrievalResult extends BaseAnnotationWrapper<Passage> implements S
 
   private String docID;
 
+  // the dictionary the ordinal was looked up in, null if it has not been looked up yet
+  private transient DocIdDictionary ordinalDictionary;
+
+  private transient int docOrdinal;
+
   private int rank = -1;
 
   private String queryString;
@@ -52,6 +56,20 @@ public class RetrievalResult extends BaseAnnotationWrapper<Passage> implements S
     return this.docID;
   }
 
+  /**
+   * Returns the id of the document in the {@link DocIdDictionary}, or -1 if there is no document id.
+   * Results of the same document have the same ordinal, so it can be used instead of the docID for
+   * comparing and hashing.
+   */
+  public int getDocOrdinal() {
+    DocIdDictionary docIds = DocIdDictionary.getInstance();
+    if (ordinalDictionary != docIds) {
+      docOrdinal = docIds.intern(docID);
+      ordinalDictionary = docIds;
+    }
+    return docOrdinal;
+  }
+
   public int getRank() {
     return this.rank;
   }
@@ -94,17 +112,17 @@ public class RetrievalResult extends BaseAnnotationWrapper<Passage> implements S
   public void wrap(Passage passage) {
     super.wrap(passage);
     docID = passage.getUri();
+    ordinalDictionary = null;
     queryString = passage.getQueryString();
     rank = passage.getRank();
   }
 
   @Override
-  public Passage unwrap(JCas jcas) throws Exception {
-    Passage passage = super.unwrap(jcas);
+  public void unwrapInto(Passage passage) {
+    super.unwrapInto(passage);
     passage.setUri(docID);
     passage.setQueryString(queryString);
     passage.setRank(rank);
-    return passage;
   }
 
   @Override
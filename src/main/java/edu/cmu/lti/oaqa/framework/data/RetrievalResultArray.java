@@ -27,6 +27,7 @@ import org.oaqa.model.Search;
 
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
 import edu.cmu.lti.oaqa.framework.data.base.FSArrayWrapper;
+import edu.cmu.lti.oaqa.framework.data.base.TopKSelection;
 
 public class RetrievalResultArray extends FSArrayWrapper<Passage> {
 
@@ -52,6 +53,22 @@ public class RetrievalResultArray extends FSArrayWrapper<Passage> {
 
   public void setRetrievalResults(List<RetrievalResult> results) throws Exception {
     Collections.sort(results, Collections.reverseOrder());
+    assignRanks(results);
+    setArray(results);
+  }
+
+  /**
+   * Stores only the <code>limit</code> highest scored results, selected without sorting the whole
+   * list. The ranks are the same as those assigned by {@link #setRetrievalResults(List)}. The array
+   * should be created with a length of <code>min(results.size(), limit)</code>.
+   */
+  public void setRetrievalResults(List<RetrievalResult> results, int limit) throws Exception {
+    List<RetrievalResult> top = TopKSelection.select(results, limit);
+    assignRanks(top);
+    setArray(top);
+  }
+
+  private static void assignRanks(List<RetrievalResult> results) {
     double prevScore = Double.NaN;
     int prevRank = 0;
     for (int i = 0; i < results.size(); i++) {
@@ -65,7 +82,6 @@ public class RetrievalResultArray extends FSArrayWrapper<Passage> {
         result.setRank(prevRank);
       }
     }
-    setArray(results);
   }
 
   public static void storeRetrievalResults(JCas jcas, List<RetrievalResult> results)
@@ -73,6 +89,15 @@ public class RetrievalResultArray extends FSArrayWrapper<Passage> {
     new RetrievalResultArray(jcas, results.size()).setRetrievalResults(results);
   }
 
+  public static void storeRetrievalResults(JCas jcas, List<RetrievalResult> results, int limit)
+          throws Exception {
+    if (limit >= results.size()) {
+      storeRetrievalResults(jcas, results);
+    } else {
+      new RetrievalResultArray(jcas, Math.max(limit, 0)).setRetrievalResults(results, limit);
+    }
+  }
+
   public List<RetrievalResult> getRetrievalResults() throws Exception {
     Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
     if (search != null) {
@@ -87,4 +112,65 @@ public class RetrievalResultArray extends FSArrayWrapper<Passage> {
     return new RetrievalResultArray(jcas, 0).getRetrievalResults();
   }
 
+  /**
+   * Reads the stored retrieval results like {@link #getRetrievalResults()}, and keeps track of the
+   * hit each of them was created from, for a later {@link #updateRetrievalResults(List, int)}.
+   */
+  public List<RetrievalResult> getRetrievalResultsForUpdate() throws Exception {
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    if (search != null) {
+      array = search.getHitList();
+      return getArray(Passage.class, RetrievalResult.class, true);
+    } else {
+      return new ArrayList<RetrievalResult>();
+    }
+  }
+
+  /**
+   * Stores the retrieval results like {@link #storeRetrievalResults(JCas, List, int)}, but
+   * writes them back into the hits read by {@link #getRetrievalResultsForUpdate()}. Hits that are
+   * still in the list are modified in place and only new hits are allocated. The
+   * existing {@link Search} is kept, and its hit list is only replaced if the number of hits
+   * changes.
+   * 
+   * @return the number of newly allocated hits
+   */
+  public int updateRetrievalResults(List<RetrievalResult> results, int limit) throws Exception {
+    List<RetrievalResult> top;
+    if (limit >= results.size()) {
+      Collections.sort(results, Collections.reverseOrder());
+      top = results;
+    } else {
+      top = TopKSelection.select(results, limit);
+    }
+    assignRanks(top);
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    int created = updateArray(top);
+    if (search != null) {
+      search.setHitList(array);
+    } else {
+      complete();
+    }
+    return created;
+  }
+
+  /**
+   * Returns a fixed-size view of the stored retrieval results that wraps each hit on first
+   * access, which is cheaper than {@link #getRetrievalResults()} when only a prefix of the list is read.
+   * The view is empty if nothing is stored.
+   */
+  public List<RetrievalResult> getRetrievalResultsView() throws Exception {
+    Search search = (Search) BaseJCasHelper.getFS(jcas, Search.type);
+    if (search != null) {
+      array = search.getHitList();
+      return getArrayView(Passage.class, RetrievalResult.class);
+    } else {
+      return Collections.emptyList();
+    }
+  }
+
+  public static List<RetrievalResult> retrieveRetrievalResultsView(JCas jcas) throws Exception {
+    return new RetrievalResultArray(jcas, 0).getRetrievalResultsView();
+  }
+
 }
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+/**
+ * Steps through the windows of a fixed number of consecutive sentences of an {@link Article}, from
+ * the first sentence to the last, without creating any object. An article with fewer sentences
+ * than the width has a single window over all of them.
+ * 
+ * <pre>
+ * SentenceWindowCursor windows = article.getSentenceWindows(3);
+ * while (windows.next()) {
+ *   score(windows.getBegin(), windows.getEnd());
+ * }
+ * </pre>
+ */
+public class SentenceWindowCursor {
+
+  private final int[] begins;
+
+  private final int[] ends;
+
+  private final int width;
+
+  private int first = -1;
+
+  SentenceWindowCursor(int[] begins, int[] ends, int width) {
+    if (width < 1) {
+      throw new IllegalArgumentException("Window width must be positive: " + width);
+    }
+    this.begins = begins;
+    this.ends = ends;
+    this.width = width;
+  }
+
+  /**
+   * Moves to the next window, and returns <code>false</code> if there is none.
+   */
+  public boolean next() {
+    if (first + width >= begins.length && (first >= 0 || begins.length == 0)) {
+      return false;
+    }
+    first++;
+    return true;
+  }
+
+  /**
+   * Moves back to before the first window.
+   */
+  public void reset() {
+    first = -1;
+  }
+
+  /**
+   * Returns the index of the first sentence of the window.
+   */
+  public int getFirstSentence() {
+    return first;
+  }
+
+  /**
+   * Returns one past the index of the last sentence of the window.
+   */
+  public int getLastSentence() {
+    return Math.min(first + width, begins.length);
+  }
+
+  /**
+   * Returns the offset at which the window begins in the text.
+   */
+  public int getBegin() {
+    return begins[first];
+  }
+
+  /**
+   * Returns the offset at which the window ends in the text.
+   */
+  public int getEnd() {
+    return ends[getLastSentence() - 1];
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+/**
+ * Matching of terms against spans of a text, given as a {@link CharSequence} and offsets, that
+ * neither copies the text nor creates objects, so that it can run over many candidate windows.
+ */
+public final class SpanMatcher {
+
+  private SpanMatcher() {
+  }
+
+  /**
+   * Tells whether <code>length</code> characters of <code>text</code> from <code>offset</code>
+   * are those of <code>term</code> from <code>termOffset</code>.
+   */
+  public static boolean regionMatches(CharSequence text, int offset, CharSequence term,
+          int termOffset, int length, boolean ignoreCase) {
+    if (offset < 0 || termOffset < 0 || offset + length > text.length()
+            || termOffset + length > term.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c1 = text.charAt(offset + i);
+      char c2 = term.charAt(termOffset + i);
+      if (c1 != c2 && (!ignoreCase || !equalsIgnoreCase(c1, c2))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tells whether the span <code>[begin, end)</code> of the text is the term, ignoring case, e.g.
+   * to compare a token found by a {@link SpanTokenizer} with a keyterm.
+   */
+  public static boolean equalsIgnoreCase(CharSequence text, int begin, int end, CharSequence term) {
+    return end - begin == term.length() && regionMatches(text, begin, term, 0, end - begin, true);
+  }
+
+  /**
+   * Returns the offset of the first occurrence of the term within <code>[begin, end)</code> of the
+   * text, or -1 if there is none.
+   */
+  public static int indexOf(CharSequence text, int begin, int end, CharSequence term,
+          boolean ignoreCase) {
+    int last = end - term.length();
+    for (int offset = begin; offset <= last; offset++) {
+      if (regionMatches(text, offset, term, 0, term.length(), ignoreCase)) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Counts the non-overlapping occurrences of the term within <code>[begin, end)</code> of the
+   * text. With <code>wholeTokens</code> set, only the occurrences that neither begin nor end in
+   * the middle of a token are counted.
+   */
+  public static int countOccurrences(CharSequence text, int begin, int end, CharSequence term,
+          boolean ignoreCase, boolean wholeTokens) {
+    if (term.length() == 0) {
+      return 0;
+    }
+    int count = 0;
+    int offset = indexOf(text, begin, end, term, ignoreCase);
+    while (offset >= 0) {
+      int termEnd = offset + term.length();
+      if (!wholeTokens || isTokenBoundary(text, offset) && isTokenBoundary(text, termEnd)) {
+        count++;
+        offset = indexOf(text, termEnd, end, term, ignoreCase);
+      } else {
+        offset = indexOf(text, offset + 1, end, term, ignoreCase);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Counts the tokens of the view that are the term, ignoring case.
+   */
+  public static int countTokens(SpanTokenizer tokenizer, SpanView view, CharSequence term) {
+    int count = 0;
+    tokenizer.reset(view);
+    while (tokenizer.next()) {
+      if (equalsIgnoreCase(view.getText(), tokenizer.getBegin(), tokenizer.getEnd(), term)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tells whether no token goes across <code>offset</code> in the text.
+   */
+  public static boolean isTokenBoundary(CharSequence text, int offset) {
+    return offset <= 0 || offset >= text.length()
+            || !SpanTokenizer.isTokenChar(text.charAt(offset - 1))
+            || !SpanTokenizer.isTokenChar(text.charAt(offset));
+  }
+
+  private static boolean equalsIgnoreCase(char c1, char c2) {
+    char u1 = Character.toUpperCase(c1);
+    char u2 = Character.toUpperCase(c2);
+    return u1 == u2 || Character.toLowerCase(u1) == Character.toLowerCase(u2);
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+/**
+ * Splits a span of a text into tokens, i.e. maximal runs of letters and digits, without creating
+ * any object. The tokens are given by their offsets in the text, and compared with
+ * {@link SpanMatcher}; a tokenizer can be reset to another span and reused.
+ * 
+ * <pre>
+ * SpanTokenizer tokenizer = new SpanTokenizer();
+ * tokenizer.reset(view);
+ * while (tokenizer.next()) {
+ *   if (SpanMatcher.equalsIgnoreCase(view.getText(), tokenizer.getBegin(), tokenizer.getEnd(),
+ *           term)) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class SpanTokenizer {
+
+  private CharSequence text;
+
+  private int position;
+
+  private int limit;
+
+  private int begin;
+
+  private int end;
+
+  /**
+   * Starts tokenizing <code>[begin, end)</code> of the text.
+   */
+  public SpanTokenizer reset(CharSequence text, int begin, int end) {
+    this.text = text;
+    this.position = begin;
+    this.limit = end;
+    this.begin = begin;
+    this.end = begin;
+    return this;
+  }
+
+  /**
+   * Starts tokenizing the span of the view, with offsets in the text of the view.
+   */
+  public SpanTokenizer reset(SpanView view) {
+    return reset(view.getText(), view.getBegin(), view.getEnd());
+  }
+
+  /**
+   * Moves to the next token, and returns <code>false</code> if there is none.
+   */
+  public boolean next() {
+    while (position < limit && !isTokenChar(text.charAt(position))) {
+      position++;
+    }
+    if (position == limit) {
+      begin = end = limit;
+      return false;
+    }
+    begin = position;
+    while (position < limit && isTokenChar(text.charAt(position))) {
+      position++;
+    }
+    end = position;
+    return true;
+  }
+
+  /**
+   * Returns the offset of the current token in the text.
+   */
+  public int getBegin() {
+    return begin;
+  }
+
+  /**
+   * Returns the offset in the text right after the current token.
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  public static boolean isTokenChar(char c) {
+    return Character.isLetterOrDigit(c);
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+/**
+ * A {@link CharSequence} over a span of a text, which reads the characters from the text instead
+ * of copying them. A view can be moved from span to span with {@link #set(int, int)}, so scoring
+ * many candidate windows of a document needs a single view; it is not meant to be shared between
+ * threads.
+ */
+public class SpanView implements CharSequence {
+
+  private final CharSequence text;
+
+  private int begin;
+
+  private int end;
+
+  public SpanView(CharSequence text, int begin, int end) {
+    this.text = text;
+    set(begin, end);
+  }
+
+  /**
+   * Moves the view to the span <code>[begin, end)</code> of the text.
+   */
+  public SpanView set(int begin, int end) {
+    if (begin < 0 || end < begin || end > text.length()) {
+      throw new IndexOutOfBoundsException("Span (" + begin + ", " + end + ") out of a text of "
+              + text.length() + " characters");
+    }
+    this.begin = begin;
+    this.end = end;
+    return this;
+  }
+
+  public SpanView set(TextSpan span) {
+    return set(span.begin, span.end);
+  }
+
+  public CharSequence getText() {
+    return text;
+  }
+
+  public int getBegin() {
+    return begin;
+  }
+
+  public int getEnd() {
+    return end;
+  }
+
+  @Override
+  public int length() {
+    return end - begin;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= end - begin) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of a span of " + (end - begin)
+              + " characters");
+    }
+    return text.charAt(begin + index);
+  }
+
+  @Override
+  public SpanView subSequence(int start, int end) {
+    if (start < 0 || end < start || end > this.end - begin) {
+      throw new IndexOutOfBoundsException("Subsequence (" + start + ", " + end
+              + ") out of a span of " + (this.end - begin) + " characters");
+    }
+    return new SpanView(text, begin + start, begin + end);
+  }
+
+  /**
+   * Returns a copy of the characters of the span.
+   */
+  @Override
+  public String toString() {
+    return text.subSequence(begin, end).toString();
+  }
+
+}
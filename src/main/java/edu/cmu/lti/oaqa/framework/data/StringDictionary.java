@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps strings to dense int ids in order of first occurrence. Lookups of strings that have already
+ * been interned do not lock, so a dictionary can be shared between threads.
+ */
+public class StringDictionary {
+
+  private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+  // written under the lock, and always before the id is published through the map
+  private volatile String[] values = new String[16];
+
+  private int size;
+
+  /**
+   * Returns the id of the string, assigning the next free id if it has not been seen before.
+   * <code>null</code> is mapped to -1.
+   */
+  public int intern(String value) {
+    if (value == null) {
+      return -1;
+    }
+    Integer id = ids.get(value);
+    if (id == null) {
+      synchronized (this) {
+        id = ids.get(value);
+        if (id == null) {
+          String[] current = values;
+          if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+          }
+          current[size] = value;
+          values = current;
+          id = size++;
+          ids.put(value, id);
+        }
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Returns the id of the string, or -1 if it has not been interned.
+   */
+  public int getId(String value) {
+    Integer id = value == null ? null : ids.get(value);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the string with the given id, which must have been returned by this dictionary.
+   */
+  public String get(int id) {
+    return id < 0 ? null : values[id];
+  }
+
+  /**
+   * Returns the instance of the string held by the dictionary, interning it if necessary, so that
+   * equal strings share one instance and compare by identity first.
+   */
+  public String canonicalize(String value) {
+    return get(intern(value));
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
+
+/**
+ * A compact binary encoding of {@link Keyterm}, {@link RetrievalResult} and
+ * {@link PassageCandidate} lists, for moving them between JVMs or to disk without Java
+ * serialization.
+ * <p>
+ * A message starts with a format version and a list kind, followed by a dictionary of all strings
+ * used by the list (texts, docIDs, query strings, component ids and implementing wrappers) and then
+ * the elements. Strings are written as dictionary ids, ranks and offsets as variable length
+ * integers, and scores as 4-byte floats. Unlike Java serialization, the probability, component id
+ * and implementing wrapper of each element are kept.
+ * <p>
+ * {@link #writeFrame(WritableByteChannel, ByteBuffer)} and {@link #readFrame(ReadableByteChannel)}
+ * prefix each message with its length, so that several lists can be streamed over one channel.
+ * <p>
+ * Only the fields of the three wrapper classes are encoded, and the elements are always decoded as
+ * instances of these classes: the extra fields of a subclass are lost, although its implementing
+ * wrapper name is kept. Lengths and counts read from a message are checked against its size, so
+ * a corrupt or truncated message fails with a {@link StreamCorruptedException}.
+ */
+public final class WrapperListCodec {
+
+  public static final byte VERSION = 1;
+
+  private static final byte KEYTERMS = 1;
+
+  private static final byte RETRIEVAL_RESULTS = 2;
+
+  private static final byte PASSAGE_CANDIDATES = 3;
+
+  private static final int FRAME_CHUNK = 1 << 16;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private WrapperListCodec() {
+  }
+
+  public static ByteBuffer encodeKeyterms(List<Keyterm> keyterms) {
+    StringDictionary strings = new StringDictionary();
+    for (Keyterm keyterm : keyterms) {
+      strings.intern(keyterm.getText());
+      internBase(strings, keyterm);
+    }
+    Output out = newOutput(KEYTERMS, strings, keyterms.size());
+    for (Keyterm keyterm : keyterms) {
+      out.writeString(strings, keyterm.getText());
+      writeBase(out, strings, keyterm);
+    }
+    return out.toByteBuffer();
+  }
+
+  public static List<Keyterm> decodeKeyterms(ByteBuffer buffer) throws IOException {
+    try {
+      String[] strings = readHeader(buffer, KEYTERMS);
+      int size = readLength(buffer);
+      List<Keyterm> keyterms = new ArrayList<Keyterm>(size);
+      for (int i = 0; i < size; i++) {
+        Keyterm keyterm = new Keyterm(readString(buffer, strings));
+        readBase(buffer, strings, keyterm);
+        keyterms.add(keyterm);
+      }
+      return keyterms;
+    } catch (BufferUnderflowException e) {
+      throw truncated();
+    }
+  }
+
+  public static ByteBuffer encodeRetrievalResults(List<RetrievalResult> results) {
+    StringDictionary strings = new StringDictionary();
+    for (RetrievalResult result : results) {
+      strings.intern(result.getDocID());
+      strings.intern(result.getQueryString());
+      internBase(strings, result);
+    }
+    Output out = newOutput(RETRIEVAL_RESULTS, strings, results.size());
+    for (RetrievalResult result : results) {
+      out.writeString(strings, result.getDocID());
+      out.writeString(strings, result.getQueryString());
+      out.writeSignedVarInt(result.getRank());
+      writeBase(out, strings, result);
+    }
+    return out.toByteBuffer();
+  }
+
+  public static List<RetrievalResult> decodeRetrievalResults(ByteBuffer buffer)
+          throws IOException {
+    try {
+      String[] strings = readHeader(buffer, RETRIEVAL_RESULTS);
+      int size = readLength(buffer);
+      List<RetrievalResult> results = new ArrayList<RetrievalResult>(size);
+      for (int i = 0; i < size; i++) {
+        String docID = readString(buffer, strings);
+        String queryString = readString(buffer, strings);
+        RetrievalResult result = new RetrievalResult(docID, 0, queryString);
+        result.setRank(readSignedVarInt(buffer));
+        readBase(buffer, strings, result);
+        results.add(result);
+      }
+      return results;
+    } catch (BufferUnderflowException e) {
+      throw truncated();
+    }
+  }
+
+  public static ByteBuffer encodePassageCandidates(List<PassageCandidate> candidates) {
+    StringDictionary strings = new StringDictionary();
+    for (PassageCandidate candidate : candidates) {
+      strings.intern(candidate.getDocID());
+      strings.intern(candidate.getQueryString());
+      internBase(strings, candidate);
+    }
+    Output out = newOutput(PASSAGE_CANDIDATES, strings, candidates.size());
+    for (PassageCandidate candidate : candidates) {
+      out.writeString(strings, candidate.getDocID());
+      out.writeString(strings, candidate.getQueryString());
+      out.writeSignedVarInt(candidate.getRank());
+      out.writeSignedVarInt(candidate.getStart());
+      out.writeSignedVarInt(candidate.getEnd() - candidate.getStart());
+      writeBase(out, strings, candidate);
+    }
+    return out.toByteBuffer();
+  }
+
+  public static List<PassageCandidate> decodePassageCandidates(ByteBuffer buffer)
+          throws IOException {
+    try {
+      String[] strings = readHeader(buffer, PASSAGE_CANDIDATES);
+      int size = readLength(buffer);
+      List<PassageCandidate> candidates = new ArrayList<PassageCandidate>(size);
+      for (int i = 0; i < size; i++) {
+        PassageCandidate candidate = new PassageCandidate();
+        candidate.setDocID(readString(buffer, strings));
+        candidate.setQueryString(readString(buffer, strings));
+        candidate.setRank(readSignedVarInt(buffer));
+        int start = readSignedVarInt(buffer);
+        candidate.setStart(start);
+        candidate.setEnd(start + readSignedVarInt(buffer));
+        readBase(buffer, strings, candidate);
+        candidates.add(candidate);
+      }
+      return candidates;
+    } catch (BufferUnderflowException e) {
+      throw truncated();
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of the message preceded by its length.
+   */
+  public static void writeFrame(WritableByteChannel channel, ByteBuffer message)
+          throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    length.putInt(0, message.remaining());
+    writeFully(channel, length);
+    writeFully(channel, message);
+  }
+
+  /**
+   * Reads the next message written by {@link #writeFrame(WritableByteChannel, ByteBuffer)}, or
+   * returns <code>null</code> if the channel is at its end.
+   */
+  public static ByteBuffer readFrame(ReadableByteChannel channel) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    if (!readFully(channel, length, true)) {
+      return null;
+    }
+    int size = length.getInt(0);
+    if (size < 0) {
+      throw new StreamCorruptedException("Negative frame length " + size);
+    }
+    // grow the buffer as the bytes arrive rather than trusting a possibly corrupt length
+    ByteBuffer message = ByteBuffer.allocate(Math.min(size, FRAME_CHUNK));
+    while (true) {
+      readFully(channel, message, false);
+      if (message.capacity() == size) {
+        break;
+      }
+      ByteBuffer grown = ByteBuffer.allocate((int) Math.min(size, 2L * message.capacity()));
+      message.flip();
+      grown.put(message);
+      message = grown;
+    }
+    message.flip();
+    return message;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+          throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer,
+          boolean eofAllowed) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        if (eofAllowed && buffer.position() == 0) {
+          return false;
+        }
+        throw new EOFException();
+      }
+    }
+    return true;
+  }
+
+  private static void internBase(StringDictionary strings, BaseAnnotationWrapper<?> wrapper) {
+    strings.intern(wrapper.getComponentId());
+    strings.intern(wrapper.getImplementingWrapper());
+  }
+
+  private static void writeBase(Output out, StringDictionary strings,
+          BaseAnnotationWrapper<?> wrapper) {
+    out.writeString(strings, wrapper.getComponentId());
+    out.writeString(strings, wrapper.getImplementingWrapper());
+    out.writeFloat(wrapper.getProbability());
+  }
+
+  private static void readBase(ByteBuffer buffer, String[] strings,
+          BaseAnnotationWrapper<?> wrapper) throws IOException {
+    wrapper.setComponentId(readString(buffer, strings));
+    wrapper.setImplementingWrapper(readString(buffer, strings));
+    wrapper.setProbablity(readFloat(buffer));
+  }
+
+  /**
+   * Reads a float written by {@link Output#writeFloat(float)}, big-endian whatever the byte order
+   * of the buffer, which the caller may have changed (e.g. on a mapped file).
+   */
+  private static float readFloat(ByteBuffer buffer) {
+    int bits = (buffer.get() & 0xff) << 24 | (buffer.get() & 0xff) << 16
+            | (buffer.get() & 0xff) << 8 | buffer.get() & 0xff;
+    return Float.intBitsToFloat(bits);
+  }
+
+  private static Output newOutput(byte kind, StringDictionary strings, int size) {
+    Output out = new Output(64 + 16 * size);
+    out.writeByte(VERSION);
+    out.writeByte(kind);
+    out.writeVarInt(strings.size());
+    for (int i = 0; i < strings.size(); i++) {
+      byte[] bytes = strings.get(i).getBytes(UTF8);
+      out.writeVarInt(bytes.length);
+      out.writeBytes(bytes);
+    }
+    out.writeVarInt(size);
+    return out;
+  }
+
+  private static String[] readHeader(ByteBuffer buffer, byte kind) throws IOException {
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new StreamCorruptedException("Unsupported format version " + version);
+    }
+    byte actual = buffer.get();
+    if (actual != kind) {
+      throw new StreamCorruptedException("Expected list kind " + kind + " but found " + actual);
+    }
+    String[] strings = new String[readLength(buffer)];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[readLength(buffer)];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, UTF8);
+    }
+    return strings;
+  }
+
+  private static String readString(ByteBuffer buffer, String[] strings) throws IOException {
+    int id = readVarInt(buffer) - 1;
+    if (id >= strings.length) {
+      throw new StreamCorruptedException("String id " + id + " out of range");
+    }
+    return id < 0 ? null : strings[id];
+  }
+
+  private static int readVarInt(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Malformed variable length integer");
+  }
+
+  /**
+   * Reads a length or a count, which cannot exceed the number of bytes left as every string byte
+   * and every element takes at least one byte.
+   */
+  private static int readLength(ByteBuffer buffer) throws IOException {
+    int length = readVarInt(buffer);
+    if (length < 0 || length > buffer.remaining()) {
+      throw new StreamCorruptedException("Length " + length + " exceeds the " + buffer.remaining()
+              + " bytes left");
+    }
+    return length;
+  }
+
+  private static StreamCorruptedException truncated() {
+    return new StreamCorruptedException("Truncated message");
+  }
+
+  private static int readSignedVarInt(ByteBuffer buffer) throws IOException {
+    int value = readVarInt(buffer);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * A growable byte array; strings are written as their dictionary id plus one, so that 0 stands
+   * for <code>null</code>.
+   */
+  private static final class Output {
+
+    private byte[] bytes;
+
+    private int size;
+
+    Output(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+    void writeByte(int b) {
+      ensureCapacity(1);
+      bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] b) {
+      ensureCapacity(b.length);
+      System.arraycopy(b, 0, bytes, size, b.length);
+      size += b.length;
+    }
+
+    void writeVarInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7f) != 0) {
+        bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void writeSignedVarInt(int value) {
+      writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeFloat(float value) {
+      int bits = Float.floatToIntBits(value);
+      ensureCapacity(4);
+      bytes[size++] = (byte) (bits >>> 24);
+      bytes[size++] = (byte) (bits >>> 16);
+      bytes[size++] = (byte) (bits >>> 8);
+      bytes[size++] = (byte) bits;
+    }
+
+    void writeString(StringDictionary strings, String value) {
+      writeVarInt(strings.getId(value) + 1);
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(bytes, 0, size).slice();
+    }
+
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.uima.jcas.JCas;
+import org.oaqa.model.OAQATop;
+import org.oaqa.model.Passage;
+import org.oaqa.model.QueryConcept;
+
+/**
+ * A registry of {@link AnnotationFactory} instances keyed by the JCas cover class. The types that
+ * the base wrappers produce ({@link Passage} and {@link QueryConcept}) are registered with factories
+ * that call the constructor directly. Any other type gets a factory holding its
+ * <code>(JCas)</code> constructor, which is looked up once on first use and reused afterwards.
+ */
+public final class AnnotationFactories {
+
+  private static final ConcurrentMap<Class<?>, AnnotationFactory<?>> factories = new ConcurrentHashMap<Class<?>, AnnotationFactory<?>>();
+
+  static {
+    register(Passage.class, new AnnotationFactory<Passage>() {
+
+      @Override
+      public Passage create(JCas jcas) {
+        return new Passage(jcas);
+      }
+    });
+    register(QueryConcept.class, new AnnotationFactory<QueryConcept>() {
+
+      @Override
+      public QueryConcept create(JCas jcas) {
+        return new QueryConcept(jcas);
+      }
+    });
+  }
+
+  private AnnotationFactories() {
+  }
+
+  /**
+   * Registers (or replaces) the factory used to create feature structures of the given type.
+   */
+  public static <T extends OAQATop> void register(Class<T> type, AnnotationFactory<T> factory) {
+    factories.put(type, factory);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T extends OAQATop> AnnotationFactory<T> get(Class<T> type)
+          throws NoSuchMethodException {
+    AnnotationFactory<?> factory = factories.get(type);
+    if (factory == null) {
+      factory = new ConstructorFactory<T>(type.getConstructor(JCas.class));
+      AnnotationFactory<?> existing = factories.putIfAbsent(type, factory);
+      if (existing != null) {
+        factory = existing;
+      }
+    }
+    return (AnnotationFactory<T>) factory;
+  }
+
+  private static final class ConstructorFactory<T extends OAQATop> implements AnnotationFactory<T> {
+
+    private final Constructor<T> constructor;
+
+    ConstructorFactory(Constructor<T> constructor) {
+      this.constructor = constructor;
+    }
+
+    @Override
+    public T create(JCas jcas) throws Exception {
+      return constructor.newInstance(jcas);
+    }
+
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import org.apache.uima.jcas.JCas;
+import org.oaqa.model.OAQATop;
+
+/**
+ * Creates an empty feature structure of a given type in a {@link JCas}, used by
+ * {@link BaseAnnotationWrapper#unwrap(JCas)} instead of a reflective constructor lookup.
+ * 
+ * @see AnnotationFactories
+ */
+public interface AnnotationFactory<T extends OAQATop> {
+
+  T create(JCas jcas) throws Exception;
+
+}
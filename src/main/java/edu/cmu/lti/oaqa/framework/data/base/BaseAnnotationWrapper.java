@@ -16,16 +16,28 @@
 
 package edu.cmu.lti.oaqa.framework.data.base;
 
-import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
-import org.apache.uima.cas.Feature;
 import org.apache.uima.jcas.JCas;
 import org.oaqa.model.OAQATop;
 
+/**
+ * The base of the wrappers of {@link OAQATop} feature structures. Subclasses that hold additional
+ * features copy them into the feature structure by overriding {@link #unwrapInto(OAQATop)}, which
+ * serves both {@link #unwrap(JCas)} and the in-place updates of
+ * {@link FSArrayWrapper#updateArray(java.util.List)}. Subclasses that still override
+ * <code>unwrap</code> instead keep working: the in-place update then falls back to
+ * <code>unwrap</code> and allocates a new feature structure.
+ */
 public abstract class BaseAnnotationWrapper<T extends OAQATop> implements AnnotationWrapper<T>,
         Comparable<BaseAnnotationWrapper<T>> {
 
+  private static final ConcurrentMap<Class<?>, Boolean> inPlaceClasses =
+          new ConcurrentHashMap<Class<?>, Boolean>();
+
   protected final Class<? extends T> typeClass = getTypeClass();
 
   protected String implementingWrapper = getClass().getCanonicalName();
@@ -38,12 +50,48 @@ public abstract class BaseAnnotationWrapper<T extends OAQATop> implements Annota
 
   @Override
   public T unwrap(JCas jcas) throws Exception {
-    Constructor<? extends T> c = typeClass.getConstructor(JCas.class);
-    T top = c.newInstance(jcas);
+    T top = AnnotationFactories.get(typeClass).create(jcas);
+    unwrapInto(top);
+    return top;
+  }
+
+  /**
+   * Copies the content of the wrapper into an existing feature structure of the type returned by
+   * {@link #getTypeClass()}. This is the in-place counterpart of {@link #unwrap(JCas)}, which
+   * subclasses should extend instead of <code>unwrap</code>.
+   */
+  public void unwrapInto(T top) {
     top.setImplementingWrapper(implementingWrapper);
     top.setComponentId(componentId);
     top.setProbability(probability);
-    return top;
+  }
+
+  /**
+   * Tells whether {@link #unwrapInto(OAQATop)} writes everything {@link #unwrap(JCas)} does, which
+   * is not the case if a subclass overrides <code>unwrap</code> below the class that last
+   * overrides <code>unwrapInto</code>.
+   */
+  boolean canUnwrapInPlace() {
+    Class<?> type = getClass();
+    Boolean inPlace = inPlaceClasses.get(type);
+    if (inPlace == null) {
+      Class<?> unwrapClass = getDeclaringClass(type, "unwrap");
+      Class<?> unwrapIntoClass = getDeclaringClass(type, "unwrapInto");
+      inPlace = unwrapClass == unwrapIntoClass || !unwrapIntoClass.isAssignableFrom(unwrapClass);
+      inPlaceClasses.put(type, inPlace);
+    }
+    return inPlace;
+  }
+
+  private static Class<?> getDeclaringClass(Class<?> type, String name) {
+    for (Class<?> c = type; c != BaseAnnotationWrapper.class; c = c.getSuperclass()) {
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.getName().equals(name) && method.getParameterTypes().length == 1) {
+          return c;
+        }
+      }
+    }
+    return BaseAnnotationWrapper.class;
   }
 
   @Override
@@ -53,19 +101,9 @@ public abstract class BaseAnnotationWrapper<T extends OAQATop> implements Annota
     probability = top.getProbability();
   }
 
-  @SuppressWarnings("unchecked")
   public static <T extends OAQATop, W extends AnnotationWrapper<T>> W wrap(OAQATop top,
           Class<T> type, Class<W> wrapperClass) throws AnalysisEngineProcessException {
-    Feature feature = top.getType().getFeatureByBaseName("implementingWrapper");
-    String className = top.getFeatureValueAsString(feature);
-    try {
-      Class<? extends W> clazz = Class.forName(className).asSubclass(wrapperClass);
-      W inst = clazz.newInstance();
-      inst.wrap((T) top);
-      return inst;
-    } catch (Exception e) {
-      throw new AnalysisEngineProcessException(e);
-    }
+    return new WrapperDispatcher<T, W>(wrapperClass).wrap(top);
   }
   
   @Override
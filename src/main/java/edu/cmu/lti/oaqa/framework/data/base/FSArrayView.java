@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.cas.FSArray;
+import org.oaqa.model.OAQATop;
+
+/**
+ * A fixed-size list view of an {@link FSArray} that wraps each element on its first
+ * {@link #get(int)} and returns the same wrapper afterwards. {@link #set(int, Object)} replaces the
+ * element in the view only, so the view can be sorted, but the underlying array is never modified.
+ */
+public class FSArrayView<T extends OAQATop, W extends AnnotationWrapper<T>> extends AbstractList<W>
+        implements RandomAccess {
+
+  private final FSArray array;
+
+  private final WrapperDispatcher<T, W> dispatcher;
+
+  private final Object[] wrappers;
+
+  public FSArrayView(FSArray array, Class<W> wrapperClass) {
+    this.array = array;
+    this.dispatcher = new WrapperDispatcher<T, W>(wrapperClass);
+    this.wrappers = new Object[array.size()];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public W get(int index) {
+    Object wrapper = wrappers[index];
+    if (wrapper == null) {
+      try {
+        wrapper = dispatcher.wrap((OAQATop) array.get(index));
+      } catch (AnalysisEngineProcessException e) {
+        throw new IllegalStateException(e);
+      }
+      wrappers[index] = wrapper;
+    }
+    return (W) wrapper;
+  }
+
+  @Override
+  public W set(int index, W element) {
+    W previous = get(index);
+    wrappers[index] = element;
+    return previous;
+  }
+
+  @Override
+  public int size() {
+    return wrappers.length;
+  }
+
+}
@@ -18,7 +18,9 @@ package edu.cmu.lti.oaqa.framework.data.base;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
@@ -33,6 +35,9 @@ public abstract class FSArrayWrapper<T extends OAQATop> implements ContainerWrap
 
   protected int i;
 
+  // the feature structure each wrapper read by getArray(type, classWrapper, true) was created from
+  private Map<AnnotationWrapper<T>, T> sources;
+
   public FSArrayWrapper(JCas jcas, int length) {
     this.jcas = jcas;
     array = new FSArray(jcas, length);
@@ -61,10 +66,71 @@ public abstract class FSArrayWrapper<T extends OAQATop> implements ContainerWrap
 
   protected final <W extends AnnotationWrapper<T>> List<W> getArray(Class<T> type,
           Class<W> classWrapper) throws AnalysisEngineProcessException {
-    List<W> result = new ArrayList<W>();
+    WrapperDispatcher<T, W> dispatcher = new WrapperDispatcher<T, W>(classWrapper);
+    List<W> result = new ArrayList<W>(array.size());
     for (int i = 0; i < array.size(); i++) {
-      result.add(BaseAnnotationWrapper.wrap((OAQATop) array.get(i), type, classWrapper));
+      result.add(dispatcher.wrap((OAQATop) array.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Reads the array like {@link #getArray(Class, Class)} and, if <code>trackSources</code> is set,
+   * remembers the feature structure each wrapper was created from, so that
+   * {@link #updateArray(List)} can write the wrappers back in place.
+   */
+  protected final <W extends AnnotationWrapper<T>> List<W> getArray(Class<T> type,
+          Class<W> classWrapper, boolean trackSources) throws AnalysisEngineProcessException {
+    List<W> result = getArray(type, classWrapper);
+    if (trackSources) {
+      sources = new IdentityHashMap<AnnotationWrapper<T>, T>(result.size() * 2);
+      for (int i = 0; i < result.size(); i++) {
+        sources.put(result.get(i), type.cast(array.get(i)));
+      }
     }
     return result;
   }
+
+  /**
+   * Replaces the content of the array with the wrappers, reusing feature structures where possible.
+   * A wrapper that was read by {@link #getArray(Class, Class, boolean)} is unwrapped into the
+   * feature structure it came from, unless its class overrides
+   * {@link AnnotationWrapper#unwrap(JCas)} but not {@link BaseAnnotationWrapper#unwrapInto(OAQATop)};
+   * any other wrapper is unwrapped into a new one. The array itself is only reallocated if its
+   * length changes. Other references to the reused feature structures see the new values.
+   * 
+   * @return the number of newly created feature structures
+   */
+  protected final <W extends AnnotationWrapper<T>> int updateArray(List<W> wrappers)
+          throws Exception {
+    FSArray target = wrappers.size() == array.size() ? array : new FSArray(jcas, wrappers.size());
+    int created = 0;
+    for (int i = 0; i < wrappers.size(); i++) {
+      W wrapper = wrappers.get(i);
+      T top = sources == null ? null : sources.remove(wrapper);
+      if (top != null && wrapper instanceof BaseAnnotationWrapper
+              && top.getClass() == ((BaseAnnotationWrapper<T>) wrapper).getTypeClass()
+              && ((BaseAnnotationWrapper<T>) wrapper).canUnwrapInPlace()) {
+        ((BaseAnnotationWrapper<T>) wrapper).unwrapInto(top);
+      } else {
+        top = wrapper.unwrap(jcas);
+        created++;
+      }
+      target.set(i, top);
+    }
+    array = target;
+    sources = null;
+    return created;
+  }
+
+  /**
+   * Returns a view of the array that wraps elements lazily, for readers that only look at a prefix
+   * of the list.
+   * 
+   * @see FSArrayView
+   */
+  protected final <W extends AnnotationWrapper<T>> List<W> getArrayView(Class<T> type,
+          Class<W> classWrapper) {
+    return new FSArrayView<T, W>(array, classWrapper);
+  }
 }
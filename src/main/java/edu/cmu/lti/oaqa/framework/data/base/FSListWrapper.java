@@ -23,6 +23,7 @@ import java.util.List;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.FSList;
+import org.apache.uima.jcas.cas.NonEmptyFSList;
 import org.oaqa.model.OAQATop;
 
 import edu.cmu.lti.oaqa.framework.BaseJCasHelper;
@@ -33,16 +34,58 @@ public abstract class FSListWrapper<T extends OAQATop> implements ContainerWrapp
 
   protected FSList list;
 
+  protected NonEmptyFSList tail;
+
   public FSListWrapper(JCas jcas) {
     this.jcas = jcas;
     list = new FSList(jcas);
   }
 
+  /**
+   * Prepends the annotation to the list, i.e. a list built by {@link #add(AnnotationWrapper)} is
+   * read back in reverse insertion order.
+   */
   @Override
   public void add(AnnotationWrapper<T> annotation) throws Exception {
     list = BaseJCasHelper.addToFSList(jcas, list, annotation.unwrap(jcas));
   }
 
+  /**
+   * Appends the annotation at the end of the list, so the list is read back in insertion order.
+   * The last node is looked up on the first append and remembered for the next ones.
+   */
+  public void append(AnnotationWrapper<T> annotation) throws Exception {
+    NonEmptyFSList node = new NonEmptyFSList(jcas);
+    node.setHead(annotation.unwrap(jcas));
+    if (tail == null) {
+      tail = findTail();
+    }
+    if (tail == null) {
+      node.setTail(list);
+      list = node;
+    } else {
+      node.setTail(tail.getTail());
+      tail.setTail(node);
+    }
+    tail = node;
+  }
+
+  /**
+   * Replaces the list, e.g. by one read from the CAS, which is then appended to from its end.
+   */
+  protected final void setFSList(FSList list) {
+    this.list = list;
+    tail = null;
+  }
+
+  private NonEmptyFSList findTail() {
+    NonEmptyFSList last = null;
+    for (FSList node = list; node instanceof NonEmptyFSList; node = last.getTail()) {
+      last = (NonEmptyFSList) node;
+    }
+    return last;
+  }
+
   @Override
   public abstract void clear();
 
@@ -58,11 +101,30 @@ public abstract class FSListWrapper<T extends OAQATop> implements ContainerWrapp
     complete();
   }
 
+  /**
+   * Stores the wrappers in a single pass. If <code>preserveOrder</code> is set, the list is built
+   * with {@link #append(AnnotationWrapper)} and keeps the order of the collection; otherwise it
+   * behaves as {@link #setList(Collection)}, which reverses it.
+   */
+  protected final <W extends AnnotationWrapper<T>> void setList(Collection<W> wrappers,
+          boolean preserveOrder) throws Exception {
+    if (!preserveOrder) {
+      setList(wrappers);
+      return;
+    }
+    clear();
+    for (W wrapper : wrappers) {
+      append(wrapper);
+    }
+    complete();
+  }
+
   protected final <W extends AnnotationWrapper<T>> List<W> getList(Class<T> type,
           Class<W> classWrapper) throws AnalysisEngineProcessException {
+    WrapperDispatcher<T, W> dispatcher = new WrapperDispatcher<T, W>(classWrapper);
     List<W> result = new ArrayList<W>();
     for (OAQATop top : BaseJCasHelper.<OAQATop> fsIterator(list)) {
-      result.add(BaseAnnotationWrapper.wrap(top, type, classWrapper));
+      result.add(dispatcher.wrap(top));
     }
     return result;
   }
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Partial selection of the K greatest elements of a list with a bounded binary heap of indices, in
+ * O(n log K) time. The selected elements are returned in descending order, and equal elements keep
+ * their relative order in the input, i.e. the result is the prefix of length K of the list sorted
+ * stably by {@link Collections#reverseOrder()}.
+ */
+public final class TopKSelection {
+
+  private TopKSelection() {
+  }
+
+  public static <W extends Comparable<? super W>> List<W> select(List<W> list, int k) {
+    if (k >= list.size()) {
+      List<W> sorted = new ArrayList<W>(list);
+      Collections.sort(sorted, Collections.reverseOrder());
+      return sorted;
+    }
+    if (k <= 0) {
+      return new ArrayList<W>();
+    }
+    // min-heap on (value, -index): the root is the element that would be dropped first
+    int[] heap = new int[k];
+    int size = 0;
+    for (int i = 0; i < list.size(); i++) {
+      if (size < k) {
+        heap[size] = i;
+        siftUp(list, heap, size++);
+      } else if (isWorse(list, heap[0], i)) {
+        heap[0] = i;
+        siftDown(list, heap, 0, size);
+      }
+    }
+    Object[] selected = new Object[k];
+    while (size > 0) {
+      selected[size - 1] = list.get(heap[0]);
+      heap[0] = heap[--size];
+      siftDown(list, heap, 0, size);
+    }
+    List<W> result = new ArrayList<W>(k);
+    for (Object element : selected) {
+      @SuppressWarnings("unchecked")
+      W w = (W) element;
+      result.add(w);
+    }
+    return result;
+  }
+
+  /**
+   * Whether the element at index <code>a</code> ranks below the one at <code>b</code>.
+   */
+  private static <W extends Comparable<? super W>> boolean isWorse(List<W> list, int a, int b) {
+    int cmp = list.get(a).compareTo(list.get(b));
+    return cmp != 0 ? cmp < 0 : a > b;
+  }
+
+  private static <W extends Comparable<? super W>> void siftUp(List<W> list, int[] heap, int pos) {
+    int node = heap[pos];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (!isWorse(list, node, heap[parent])) {
+        break;
+      }
+      heap[pos] = heap[parent];
+      pos = parent;
+    }
+    heap[pos] = node;
+  }
+
+  private static <W extends Comparable<? super W>> void siftDown(List<W> list, int[] heap,
+          int pos, int size) {
+    int node = heap[pos];
+    int half = size >>> 1;
+    while (pos < half) {
+      int child = 2 * pos + 1;
+      if (child + 1 < size && isWorse(list, heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!isWorse(list, heap[child], node)) {
+        break;
+      }
+      heap[pos] = heap[child];
+      pos = child;
+    }
+    heap[pos] = node;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.oaqa.model.OAQATop;
+
+/**
+ * Creates wrappers for feature structures according to their "implementingWrapper" feature. The
+ * feature handle is resolved once per UIMA {@link Type} and the wrapper constructor once per
+ * distinct wrapper class name, both in caches shared by all dispatchers. Each dispatcher also
+ * remembers the last type and wrapper class it has seen, so wrapping a list whose elements share a
+ * single wrapper class does not touch the shared caches after the first element.
+ */
+public final class WrapperDispatcher<T extends OAQATop, W extends AnnotationWrapper<T>> {
+
+  private static final ConcurrentMap<Type, Feature> features = new ConcurrentHashMap<Type, Feature>();
+
+  private static final ConcurrentMap<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>();
+
+  private final Class<W> wrapperClass;
+
+  private Type lastType;
+
+  private Feature lastFeature;
+
+  private String lastClassName;
+
+  private Constructor<? extends W> lastConstructor;
+
+  public WrapperDispatcher(Class<W> wrapperClass) {
+    this.wrapperClass = wrapperClass;
+  }
+
+  @SuppressWarnings("unchecked")
+  public W wrap(OAQATop top) throws AnalysisEngineProcessException {
+    Type type = top.getType();
+    if (type != lastType) {
+      lastFeature = getImplementingWrapperFeature(type);
+      lastType = type;
+    }
+    String className = top.getFeatureValueAsString(lastFeature);
+    try {
+      if (className == null || !className.equals(lastClassName)) {
+        Constructor<?> constructor = getConstructor(className);
+        // same check and exception as Class.asSubclass
+        if (!wrapperClass.isAssignableFrom(constructor.getDeclaringClass())) {
+          throw new ClassCastException(constructor.getDeclaringClass().toString());
+        }
+        lastConstructor = (Constructor<? extends W>) constructor;
+        lastClassName = className;
+      }
+      W inst = lastConstructor.newInstance();
+      inst.wrap((T) top);
+      return inst;
+    } catch (Exception e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+  }
+
+  private static Feature getImplementingWrapperFeature(Type type) {
+    Feature feature = features.get(type);
+    if (feature == null) {
+      feature = type.getFeatureByBaseName("implementingWrapper");
+      features.putIfAbsent(type, feature);
+    }
+    return feature;
+  }
+
+  private static Constructor<?> getConstructor(String className) throws ClassNotFoundException,
+          NoSuchMethodException {
+    Constructor<?> constructor = constructors.get(className);
+    if (constructor == null) {
+      constructor = Class.forName(className).getConstructor();
+      constructors.putIfAbsent(className, constructor);
+    }
+    return constructor;
+  }
+
+}
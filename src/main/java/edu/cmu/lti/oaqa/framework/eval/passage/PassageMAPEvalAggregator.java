@@ -39,6 +39,7 @@ import com.google.common.collect.Sets;
 import com.google.common.collect.TreeRangeSet;
 
 import edu.cmu.lti.oaqa.ecd.BaseExperimentBuilder;
+import edu.cmu.lti.oaqa.framework.data.StringDictionary;
 import edu.cmu.lti.oaqa.framework.eval.Key;
 import edu.cmu.lti.oaqa.framework.eval.retrieval.EvaluationAggregator;
 import edu.cmu.lti.oaqa.framework.eval.retrieval.EvaluationHelper;
@@ -161,11 +162,15 @@ public class PassageMAPEvalAggregator extends Resource_ImplBase implements
     float sumPrecision = 0;
     int count = 0;
     Set<Passage> foundGoldTriplets = Sets.newHashSet();
+    StringDictionary docIds = new StringDictionary();
+    int[] gsDocIds = internDocIds(docIds, gs);
     for (Passage doc : docs) {
       Range<Integer> docRange = Range.closedOpen(doc.getBegin(), doc.getEnd());
       totalChars += docRange.upperEndpoint() - docRange.lowerEndpoint();
-      for (Passage g : gs) {
-        if (!g.getUri().equals(doc.getUri()))
+      int docId = docIds.getId(doc.getUri());
+      for (int j = 0; j < gs.size() && docId >= 0; j++) {
+        Passage g = gs.get(j);
+        if (gsDocIds[j] != docId)
           continue;
         Range<Integer> gRange = Range.closedOpen(g.getBegin(), g.getEnd());
         if (!docRange.isConnected(gRange)) {
@@ -203,12 +208,14 @@ public class PassageMAPEvalAggregator extends Resource_ImplBase implements
     int denominator = 0;
     float sumPrecision = 0;
 
+    StringDictionary docIds = new StringDictionary();
+    int[] gsDocIds = internDocIds(docIds, gs);
     for (int i = 0; i < docs.size(); ++i) {
       String Aspect = "";
       int releFlag = 0;
-      String docid = docs.get(i).getUri();
-      for (int j = 0; j < gs.size(); ++j) {
-        if (!gs.get(j).getUri().equals(docid))
+      int docid = docIds.getId(docs.get(i).getUri());
+      for (int j = 0; j < gs.size() && docid >= 0; ++j) {
+        if (gsDocIds[j] != docid)
           continue;
         if ((docs.get(i).getBegin() >= gs.get(j).getBegin())
                 && (docs.get(i).getEnd() <= gs.get(j).getEnd())) {
@@ -264,4 +271,17 @@ public class PassageMAPEvalAggregator extends Resource_ImplBase implements
     avep = (float) sumPrecision / (float) uniqueAspectsByTopic.size();
     return avep;
   }
+
+  /**
+   * Interns the gold standard URIs into a dictionary local to one evaluation, so that the URIs of
+   * the run can be looked up once and compared to them by id. A run URI that is not in the
+   * dictionary (-1) matches no gold standard passage.
+   */
+  private static int[] internDocIds(StringDictionary docIds, List<Passage> gs) {
+    int[] ids = new int[gs.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = docIds.intern(gs.get(i).getUri());
+    }
+    return ids;
+  }
 }
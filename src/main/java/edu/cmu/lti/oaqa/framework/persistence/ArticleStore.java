@@ -0,0 +1,343 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import edu.cmu.lti.oaqa.framework.data.Article;
+import edu.cmu.lti.oaqa.framework.data.MappedArticle;
+
+/**
+ * A read-only, memory-mapped corpus of {@link Article}s, looked up by their ids.
+ * <p>
+ * The store is written once by a {@link Builder} and then opened by any number of JVMs, which
+ * share the pages of its files through the page cache. Each article is a record holding its text
+ * in UTF-16, so that its character offsets are positions in the mapping, followed by its merged
+ * legal spans and its sentences as arrays of begins and ends. The records are spread over chunk
+ * files that are mapped separately, as a single mapping cannot exceed 2 GB, and an index file
+ * keeps the ids sorted by their UTF-8 bytes together with the locations of their records, so a
+ * lookup is a binary search in the mapped index.
+ * <p>
+ * Stores are shared by all the components of a JVM that use the same directory.
+ */
+public final class ArticleStore {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int MAGIC = 0x41525453;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final int RECORD_HEADER_SIZE = 12;
+
+  private static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+
+  private static final String INDEX = "index.dat";
+
+  private static final Map<File, ArticleStore> stores = new HashMap<File, ArticleStore>();
+
+  private final File directory;
+
+  private final ByteBuffer index;
+
+  private final int size;
+
+  private final int locationsOffset;
+
+  private final int keysOffset;
+
+  private final MappedByteBuffer[] chunks;
+
+  private ArticleStore(File directory) throws IOException {
+    this.directory = directory;
+    index = map(new File(directory, INDEX));
+    if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+      throw new IOException("Not an article store: " + directory);
+    }
+    if (index.getInt(4) != VERSION) {
+      throw new IOException("Unsupported article store version " + index.getInt(4) + " in "
+              + directory);
+    }
+    size = index.getInt(8);
+    chunks = new MappedByteBuffer[index.getInt(12)];
+    // the key offsets (one more than the keys), then the locations, then the keys
+    locationsOffset = HEADER_SIZE + 4 * (size + 1);
+    keysOffset = locationsOffset + 8 * size;
+  }
+
+  /**
+   * Returns the store in the directory, which must have been written by a {@link Builder}.
+   */
+  public static synchronized ArticleStore open(File directory) throws IOException {
+    File canonical = directory.getCanonicalFile();
+    ArticleStore store = stores.get(canonical);
+    if (store == null) {
+      store = new ArticleStore(canonical);
+      stores.put(canonical, store);
+    }
+    return store;
+  }
+
+  /**
+   * Returns a builder that writes a new store to the directory, replacing any store in it, with
+   * chunk files of up to 1 GB.
+   */
+  public static Builder create(File directory) throws IOException {
+    return new Builder(directory, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Returns the article with the id, or <code>null</code> if there is none. The article reads its
+   * text from the mapping of the store.
+   */
+  public Article get(String id) throws IOException {
+    int found = find(id.getBytes(UTF8));
+    if (found < 0) {
+      return null;
+    }
+    long location = index.getLong(locationsOffset + 8 * found);
+    ByteBuffer record = getChunk((int) (location >>> 32)).duplicate();
+    record.position((int) location);
+    int textLength = record.getInt();
+    int legalCount = record.getInt();
+    int sentenceCount = record.getInt();
+    ByteBuffer text = record.slice();
+    text.limit(2 * textLength);
+    record.position(record.position() + 2 * textLength);
+    int[] legalBegins = readInts(record, legalCount);
+    int[] legalEnds = readInts(record, legalCount);
+    int[] sentenceBegins = readInts(record, sentenceCount);
+    int[] sentenceEnds = readInts(record, sentenceCount);
+    return new MappedArticle(id, text.asCharBuffer(), legalBegins, legalEnds, sentenceBegins,
+            sentenceEnds);
+  }
+
+  public boolean contains(String id) {
+    return find(id.getBytes(UTF8)) >= 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Closes the store; the mappings are released by the garbage collector once the articles that
+   * were read from them are no longer used.
+   */
+  public void close() {
+    synchronized (ArticleStore.class) {
+      stores.remove(directory);
+    }
+  }
+
+  private int find(byte[] key) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareKey(mid, key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private int compareKey(int i, byte[] key) {
+    int begin = keysOffset + index.getInt(HEADER_SIZE + 4 * i);
+    int length = keysOffset + index.getInt(HEADER_SIZE + 4 * (i + 1)) - begin;
+    for (int j = 0; j < Math.min(length, key.length); j++) {
+      int cmp = UnsignedBytes.compare(index.get(begin + j), key[j]);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return length - key.length;
+  }
+
+  private synchronized ByteBuffer getChunk(int id) throws IOException {
+    if (chunks[id] == null) {
+      chunks[id] = map(chunkFile(directory, id));
+    }
+    return chunks[id];
+  }
+
+  private static int[] readInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * count);
+    return values;
+  }
+
+  private static MappedByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static File chunkFile(File directory, int id) {
+    return new File(directory, String.format("chunk-%06d.dat", id));
+  }
+
+  /**
+   * Writes the articles of a store offline. The chunk files are written as the articles are added,
+   * and the index when the builder is closed, so the store cannot be opened before.
+   */
+  public static final class Builder {
+
+    private final File directory;
+
+    private final long chunkSize;
+
+    // the locations of the records by the UTF-8 bytes of the ids, the last added for an id wins
+    private final TreeMap<byte[], Long> locations = new TreeMap<byte[], Long>(
+            UnsignedBytes.lexicographicalComparator());
+
+    private int chunk = -1;
+
+    private RandomAccessFile chunkFile;
+
+    private long chunkLength;
+
+    private long keysLength;
+
+    Builder(File directory, long chunkSize) throws IOException {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Cannot create store directory " + directory);
+      }
+      new File(directory, INDEX).delete();
+      for (int id = 0; chunkFile(directory, id).exists(); id++) {
+        chunkFile(directory, id).delete();
+      }
+      this.directory = directory;
+      this.chunkSize = chunkSize;
+    }
+
+    public void add(Article article) throws IOException {
+      String text = article.getText();
+      int legalCount = article.getLegalSpanCount();
+      int sentenceCount = article.getSentenceCount();
+      long recordSize = RECORD_HEADER_SIZE + 2L * text.length() + 8L * legalCount + 8L
+              * sentenceCount;
+      if (recordSize > Integer.MAX_VALUE) {
+        throw new IOException("Article " + article.getId() + " is too large for a store");
+      }
+      ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+      record.putInt(text.length()).putInt(legalCount).putInt(sentenceCount);
+      record.asCharBuffer().put(text);
+      record.position(record.position() + 2 * text.length());
+      for (int i = 0; i < legalCount; i++) {
+        record.putInt(article.getLegalSpanBegin(i));
+      }
+      for (int i = 0; i < legalCount; i++) {
+        record.putInt(article.getLegalSpanEnd(i));
+      }
+      for (int i = 0; i < sentenceCount; i++) {
+        record.putInt(article.getSentenceBegin(i));
+      }
+      for (int i = 0; i < sentenceCount; i++) {
+        record.putInt(article.getSentenceEnd(i));
+      }
+      record.flip();
+      if (chunkFile == null || chunkLength > 0 && chunkLength + recordSize > chunkSize) {
+        nextChunk();
+      }
+      long location = ((long) chunk << 32) | chunkLength;
+      FileChannel channel = chunkFile.getChannel();
+      while (record.hasRemaining()) {
+        chunkLength += channel.write(record, chunkLength);
+      }
+      byte[] key = article.getId().getBytes(UTF8);
+      if (locations.put(key, location) == null) {
+        keysLength += key.length;
+      }
+    }
+
+    /**
+     * Writes the index and closes the files of the store.
+     */
+    public void close() throws IOException {
+      if (chunkFile != null) {
+        chunkFile.close();
+      }
+      int size = locations.size();
+      long indexSize = HEADER_SIZE + 4L * (size + 1) + 8L * size + keysLength;
+      if (indexSize > Integer.MAX_VALUE) {
+        throw new IOException("Too many articles for a store: " + size);
+      }
+      ByteBuffer index = ByteBuffer.allocate((int) indexSize);
+      index.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(chunk + 1);
+      int keyOffset = 0;
+      for (byte[] key : locations.keySet()) {
+        index.putInt(keyOffset);
+        keyOffset += key.length;
+      }
+      index.putInt(keyOffset);
+      for (long location : locations.values()) {
+        index.putLong(location);
+      }
+      for (byte[] key : locations.keySet()) {
+        index.put(key);
+      }
+      index.flip();
+      RandomAccessFile indexFile = new RandomAccessFile(new File(directory, INDEX), "rw");
+      try {
+        FileChannel channel = indexFile.getChannel();
+        while (index.hasRemaining()) {
+          channel.write(index);
+        }
+        channel.force(false);
+      } finally {
+        indexFile.close();
+      }
+    }
+
+    private void nextChunk() throws IOException {
+      if (chunkFile != null) {
+        chunkFile.getChannel().force(false);
+        chunkFile.close();
+      }
+      chunk++;
+      chunkFile = new RandomAccessFile(chunkFile(directory, chunk), "rw");
+      chunkLength = 0;
+    }
+
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.framework.persistence;
+
+import org.apache.uima.resource.Resource_ImplBase;
+
+import edu.cmu.lti.oaqa.ecd.log.LogEntry;
+import edu.cmu.lti.oaqa.ecd.log.LogPersistenceProvider;
+import edu.cmu.lti.oaqa.ecd.phase.Trace;
+
+/**
+ * A log persistence provider that keeps nothing, given to the stages of an updater chain, which
+ * write their records through the chain.
+ */
+public class DiscardingLogPersistenceProvider extends Resource_ImplBase implements
+        LogPersistenceProvider {
+
+  @Override
+  public void log(String uuid, Trace trace, LogEntry type, String value) {
+  }
+
+}
@@ -0,0 +1,415 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.persistence;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.uima.jcas.JCas;
+
+import edu.cmu.lti.oaqa.ecd.phase.ProcessingStepUtils;
+
+/**
+ * A disk-backed key-value store for the outputs of the phases, so that a rerun of an experiment
+ * can load them instead of computing them again.
+ * <p>
+ * Records are appended to segment files in a directory. Full segments are read through memory
+ * mappings, and the segment being appended to through its file channel. Each record holds a key,
+ * a value and a checksum; a record for an existing key replaces the old one, which becomes
+ * garbage. The index is rebuilt by scanning the segments when the store is opened. A torn record
+ * at the end of the last segment, e.g. after a crash, is cut off, while a damaged record anywhere
+ * else fails the opening. {@link #compact()} copies the live records to new segments and deletes
+ * the old ones; it is also done on opening if more than half of the stored bytes are garbage.
+ * <p>
+ * Stores are shared by all the components of a JVM that use the same directory, and the directory
+ * is locked against other processes. Every {@link #open(File)} must be matched by exactly one
+ * {@link #close()}, and the store is closed with the last one.
+ * <p>
+ * A component that finds its output in the store skips the computation, so any change the
+ * computation would have made to the CAS besides its stored output is not made on a rerun.
+ */
+public final class PhaseResultStore {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int HEADER_SIZE = 12;
+
+  private static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+  private static final Map<File, PhaseResultStore> stores = new HashMap<File, PhaseResultStore>();
+
+  private final File directory;
+
+  private final long segmentSize;
+
+  private final List<Segment> segments = new ArrayList<Segment>();
+
+  private final Map<String, Location> index = new HashMap<String, Location>();
+
+  private RandomAccessFile lockFile;
+
+  private FileLock lock;
+
+  private int references;
+
+  private long liveBytes;
+
+  private long totalBytes;
+
+  private PhaseResultStore(File directory, long segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Returns the store in the directory, which is created if needed.
+   */
+  public static synchronized PhaseResultStore open(File directory) throws IOException {
+    File canonical = directory.getCanonicalFile();
+    PhaseResultStore store = stores.get(canonical);
+    if (store == null) {
+      if (!canonical.isDirectory() && !canonical.mkdirs()) {
+        throw new IOException("Cannot create store directory " + canonical);
+      }
+      store = new PhaseResultStore(canonical, DEFAULT_SEGMENT_SIZE);
+      store.lock();
+      try {
+        store.load();
+        if (store.totalBytes > 2 * store.liveBytes) {
+          store.compact();
+        }
+      } catch (IOException e) {
+        store.release();
+        throw e;
+      }
+      stores.put(canonical, store);
+    }
+    store.references++;
+    return store;
+  }
+
+  /**
+   * Builds a key for the output of a component on a CAS from the trace of the CAS, which
+   * identifies the configurations of the preceding phases, the component and the sequence id of
+   * the input.
+   */
+  public static String createKey(JCas jcas, String component) {
+    return ProcessingStepUtils.getTrace(jcas).getTrace() + "|" + component + "|"
+            + ProcessingStepUtils.getSequenceId(jcas);
+  }
+
+  /**
+   * Returns a read-only buffer of the value stored for the key, or <code>null</code> if there is
+   * none.
+   */
+  public synchronized ByteBuffer get(String key) throws IOException {
+    Location location = index.get(key);
+    return location == null ? null : location.segment.read(location.valueOffset,
+            location.valueLength);
+  }
+
+  /**
+   * Stores the remaining bytes of the value for the key, replacing any previous value.
+   */
+  public synchronized void put(String key, ByteBuffer value) throws IOException {
+    byte[] bytes = new byte[value.remaining()];
+    value.duplicate().get(bytes);
+    append(key, key.getBytes(UTF8), bytes);
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * Rewrites the live records into new segments and deletes the old segments.
+   */
+  public synchronized void compact() throws IOException {
+    List<Segment> old = new ArrayList<Segment>(segments);
+    Map<String, Location> live = new HashMap<String, Location>(index);
+    segments.clear();
+    index.clear();
+    liveBytes = 0;
+    totalBytes = 0;
+    createSegment(old.isEmpty() ? 0 : old.get(old.size() - 1).id + 1);
+    for (Map.Entry<String, Location> entry : live.entrySet()) {
+      Location location = entry.getValue();
+      ByteBuffer value = location.segment.read(location.valueOffset, location.valueLength);
+      byte[] bytes = new byte[value.remaining()];
+      value.get(bytes);
+      append(entry.getKey(), entry.getKey().getBytes(UTF8), bytes);
+    }
+    for (Segment segment : old) {
+      segment.close();
+      if (!segment.file.delete()) {
+        throw new IOException("Cannot delete segment " + segment.file);
+      }
+    }
+  }
+
+  /**
+   * Releases the store for the caller of {@link #open(File)}. The last caller flushes the segments
+   * to disk, closes them and unlocks the directory; the store must be opened again to be used.
+   * 
+   * @throws IllegalStateException
+   *           if the store is already closed, as the extra call would otherwise release the
+   *           directory from under another user of it
+   */
+  public void close() throws IOException {
+    synchronized (PhaseResultStore.class) {
+      if (references <= 0) {
+        throw new IllegalStateException("Store " + directory + " is already closed");
+      }
+      if (--references > 0) {
+        return;
+      }
+      stores.remove(directory);
+    }
+    synchronized (this) {
+      try {
+        for (Segment segment : segments) {
+          segment.channel.force(false);
+          segment.close();
+        }
+      } finally {
+        segments.clear();
+        index.clear();
+        release();
+      }
+    }
+  }
+
+  private void lock() throws IOException {
+    lockFile = new RandomAccessFile(new File(directory, "store.lock"), "rw");
+    try {
+      lock = lockFile.getChannel().tryLock();
+    } catch (IOException e) {
+      lockFile.close();
+      throw e;
+    }
+    if (lock == null) {
+      lockFile.close();
+      throw new IOException("Store " + directory + " is in use by another process");
+    }
+  }
+
+  private void release() throws IOException {
+    for (Segment segment : segments) {
+      segment.close();
+    }
+    lock.release();
+    lockFile.close();
+  }
+
+  private void load() throws IOException {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().matches("segment-\\d+\\.dat");
+      }
+    });
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        return f1.getName().compareTo(f2.getName());
+      }
+    });
+    for (int i = 0; i < files.length; i++) {
+      String name = files[i].getName();
+      Segment segment = new Segment(files[i],
+              Integer.parseInt(name.substring(8, name.length() - 4)));
+      segment.full = i < files.length - 1;
+      segments.add(segment);
+      scan(segment);
+    }
+    if (segments.isEmpty()) {
+      createSegment(0);
+    }
+  }
+
+  private void scan(Segment segment) throws IOException {
+    ByteBuffer buffer = segment.read(0, (int) segment.size);
+    int offset = 0;
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int keyLength = buffer.getInt();
+      int valueLength = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (keyLength < 0 || valueLength < 0 || keyLength > buffer.remaining()
+              || valueLength > buffer.remaining() - keyLength) {
+        break;
+      }
+      byte[] key = new byte[keyLength];
+      byte[] value = new byte[valueLength];
+      buffer.get(key);
+      buffer.get(value);
+      if (checksum(key, value) != checksum) {
+        break;
+      }
+      int recordSize = HEADER_SIZE + keyLength + valueLength;
+      index(new String(key, UTF8), new Location(segment, offset + HEADER_SIZE + keyLength,
+              valueLength, recordSize));
+      offset += recordSize;
+    }
+    if (offset < segment.size) {
+      if (segment.full) {
+        throw new IOException("Damaged record at offset " + offset + " of " + segment.file);
+      }
+      segment.truncate(offset);
+    }
+  }
+
+  private void append(String key, byte[] keyBytes, byte[] value) throws IOException {
+    int recordSize = HEADER_SIZE + keyBytes.length + value.length;
+    Segment segment = segments.get(segments.size() - 1);
+    if (segment.size > 0 && segment.size + recordSize > segmentSize) {
+      segment = createSegment(segment.id + 1);
+    }
+    ByteBuffer record = ByteBuffer.allocate(recordSize);
+    record.putInt(keyBytes.length).putInt(value.length).putInt(checksum(keyBytes, value));
+    record.put(keyBytes).put(value).flip();
+    int offset = segment.append(record);
+    index(key, new Location(segment, offset + HEADER_SIZE + keyBytes.length, value.length,
+            recordSize));
+  }
+
+  private void index(String key, Location location) {
+    Location old = index.put(key, location);
+    if (old != null) {
+      liveBytes -= old.recordSize;
+    }
+    liveBytes += location.recordSize;
+    totalBytes += location.recordSize;
+  }
+
+  private Segment createSegment(int id) throws IOException {
+    if (!segments.isEmpty()) {
+      segments.get(segments.size() - 1).full = true;
+    }
+    Segment segment = new Segment(new File(directory, String.format("segment-%06d.dat", id)), id);
+    segments.add(segment);
+    return segment;
+  }
+
+  private static int checksum(byte[] key, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(key);
+    crc.update(value);
+    return (int) crc.getValue();
+  }
+
+  private static final class Location {
+
+    final Segment segment;
+
+    final int valueOffset;
+
+    final int valueLength;
+
+    final int recordSize;
+
+    Location(Segment segment, int valueOffset, int valueLength, int recordSize) {
+      this.segment = segment;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.recordSize = recordSize;
+    }
+
+  }
+
+  private static final class Segment {
+
+    final File file;
+
+    final int id;
+
+    final RandomAccessFile raf;
+
+    final FileChannel channel;
+
+    long size;
+
+    // whether records are no longer appended to the segment
+    boolean full;
+
+    // covers the segment as it was when first read, and all of it once it is full
+    MappedByteBuffer mapping;
+
+    Segment(File file, int id) throws IOException {
+      this.file = file;
+      this.id = id;
+      raf = new RandomAccessFile(file, "rw");
+      channel = raf.getChannel();
+      size = channel.size();
+    }
+
+    ByteBuffer read(int offset, int length) throws IOException {
+      if (mapping == null || full && mapping.capacity() < size) {
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      if (offset + length > mapping.capacity()) {
+        // appended since the segment was mapped
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, offset + buffer.position()) < 0) {
+            throw new IOException("Unexpected end of " + file);
+          }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+      }
+      ByteBuffer buffer = mapping.duplicate();
+      buffer.position(offset);
+      buffer.limit(offset + length);
+      return buffer.slice();
+    }
+
+    int append(ByteBuffer record) throws IOException {
+      int offset = (int) size;
+      while (record.hasRemaining()) {
+        size += channel.write(record, size);
+      }
+      return offset;
+    }
+
+    void truncate(long length) throws IOException {
+      channel.truncate(length);
+      size = length;
+      mapping = null;
+    }
+
+    void close() throws IOException {
+      raf.close();
+    }
+
+  }
+
+}
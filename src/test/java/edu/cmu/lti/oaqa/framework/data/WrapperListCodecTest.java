@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.cmu.lti.oaqa.framework.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.cmu.lti.oaqa.framework.data.base.BaseAnnotationWrapper;
+
+public class WrapperListCodecTest {
+
+  @Test
+  public void roundTripsKeyterms() throws IOException {
+    Keyterm full = new Keyterm("breast cancer");
+    full.setComponentId("extractor");
+    full.setProbablity(0.75f);
+    Keyterm empty = new Keyterm("");
+    empty.setComponentId("");
+    Keyterm nulls = new Keyterm(null);
+    nulls.setImplementingWrapper(null);
+    List<Keyterm> keyterms = Arrays.asList(full, empty, nulls);
+    List<Keyterm> decoded = WrapperListCodec.decodeKeyterms(WrapperListCodec
+            .encodeKeyterms(keyterms));
+    assertEquals(keyterms.size(), decoded.size());
+    for (int i = 0; i < keyterms.size(); i++) {
+      assertEquals(keyterms.get(i).getText(), decoded.get(i).getText());
+      assertBaseEquals(keyterms.get(i), decoded.get(i));
+    }
+  }
+
+  @Test
+  public void roundTripsRetrievalResults() throws IOException {
+    RetrievalResult full = new RetrievalResult("doc-1", 12.5f, "query");
+    full.setRank(1);
+    full.setComponentId("strategist");
+    RetrievalResult empty = new RetrievalResult("", 0, "");
+    RetrievalResult nulls = new RetrievalResult(null, -1.5f, null);
+    nulls.setImplementingWrapper(null);
+    List<RetrievalResult> results = Arrays.asList(full, empty, nulls);
+    List<RetrievalResult> decoded = WrapperListCodec.decodeRetrievalResults(WrapperListCodec
+            .encodeRetrievalResults(results));
+    assertEquals(results.size(), decoded.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertEquals(results.get(i).getDocID(), decoded.get(i).getDocID());
+      assertEquals(results.get(i).getQueryString(), decoded.get(i).getQueryString());
+      assertEquals(results.get(i).getRank(), decoded.get(i).getRank());
+      assertBaseEquals(results.get(i), decoded.get(i));
+    }
+  }
+
+  @Test
+  public void roundTripsPassageCandidates() throws Exception {
+    PassageCandidate full = new PassageCandidate("doc-1", 10, 250, 0.5f, "query");
+    full.setRank(3);
+    full.setComponentId("extractor");
+    PassageCandidate empty = new PassageCandidate("", 0, 0, 0, "");
+    PassageCandidate nulls = new PassageCandidate();
+    nulls.setImplementingWrapper(null);
+    PassageCandidate negative = new PassageCandidate("doc-2", -5, Integer.MAX_VALUE, 1, null);
+    List<PassageCandidate> candidates = Arrays.asList(full, empty, nulls, negative);
+    List<PassageCandidate> decoded = WrapperListCodec.decodePassageCandidates(WrapperListCodec
+            .encodePassageCandidates(candidates));
+    assertEquals(candidates.size(), decoded.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      assertEquals(candidates.get(i).getDocID(), decoded.get(i).getDocID());
+      assertEquals(candidates.get(i).getQueryString(), decoded.get(i).getQueryString());
+      assertEquals(candidates.get(i).getRank(), decoded.get(i).getRank());
+      assertEquals(candidates.get(i).getStart(), decoded.get(i).getStart());
+      assertEquals(candidates.get(i).getEnd(), decoded.get(i).getEnd());
+      assertBaseEquals(candidates.get(i), decoded.get(i));
+    }
+  }
+
+  @Test
+  public void roundTripsEmptyLists() throws IOException {
+    assertTrue(WrapperListCodec.decodeKeyterms(
+            WrapperListCodec.encodeKeyterms(Collections.<Keyterm> emptyList())).isEmpty());
+    assertTrue(WrapperListCodec.decodeRetrievalResults(
+            WrapperListCodec.encodeRetrievalResults(Collections.<RetrievalResult> emptyList()))
+            .isEmpty());
+    assertTrue(WrapperListCodec.decodePassageCandidates(
+            WrapperListCodec.encodePassageCandidates(Collections.<PassageCandidate> emptyList()))
+            .isEmpty());
+  }
+
+  @Test
+  public void ignoresTheByteOrderOfTheBuffer() throws IOException {
+    RetrievalResult result = new RetrievalResult("doc-1", 12.5f, "query");
+    result.setProbablity(0.3f);
+    ByteBuffer encoded = WrapperListCodec.encodeRetrievalResults(Arrays.asList(result));
+    ByteBuffer littleEndian = ByteBuffer.allocateDirect(encoded.remaining()).order(
+            ByteOrder.LITTLE_ENDIAN);
+    littleEndian.put(encoded).flip();
+    List<RetrievalResult> decoded = WrapperListCodec.decodeRetrievalResults(littleEndian);
+    assertEquals(1, decoded.size());
+    assertBaseEquals(result, decoded.get(0));
+  }
+
+  @Test
+  public void rejectsAnotherListKind() throws IOException {
+    ByteBuffer encoded = WrapperListCodec.encodeKeyterms(Arrays.asList(new Keyterm("a")));
+    try {
+      WrapperListCodec.decodeRetrievalResults(encoded);
+      fail();
+    } catch (StreamCorruptedException e) {
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedMessages() throws IOException {
+    ByteBuffer encoded = WrapperListCodec.encodeRetrievalResults(createResults(50));
+    for (int length = 0; length < encoded.remaining(); length++) {
+      ByteBuffer truncated = encoded.duplicate();
+      truncated.limit(truncated.position() + length);
+      try {
+        WrapperListCodec.decodeRetrievalResults(truncated);
+        fail("Decoded a message truncated to " + length + " bytes");
+      } catch (StreamCorruptedException e) {
+      }
+    }
+  }
+
+  @Test
+  public void rejectsCorruptLengths() throws IOException {
+    // version, kind, then a string count of 2^28 in a 6 byte message
+    ByteBuffer corrupt = ByteBuffer.wrap(new byte[] { WrapperListCodec.VERSION, 2, (byte) 0x80,
+        (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01 });
+    try {
+      WrapperListCodec.decodeRetrievalResults(corrupt);
+      fail();
+    } catch (StreamCorruptedException e) {
+    }
+  }
+
+  @Test
+  public void streamsFrames() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    WritableByteChannel out = Channels.newChannel(bytes);
+    WrapperListCodec.writeFrame(out, WrapperListCodec.encodeRetrievalResults(createResults(3)));
+    WrapperListCodec.writeFrame(out, WrapperListCodec.encodeRetrievalResults(createResults(
+            100000)));
+    ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(3, WrapperListCodec.decodeRetrievalResults(WrapperListCodec.readFrame(in))
+            .size());
+    assertEquals(100000, WrapperListCodec.decodeRetrievalResults(WrapperListCodec.readFrame(in))
+            .size());
+    assertNull(WrapperListCodec.readFrame(in));
+  }
+
+  @Test
+  public void rejectsFramesLongerThanTheStream() throws IOException {
+    ByteBuffer frame = ByteBuffer.allocate(8);
+    frame.putInt(Integer.MAX_VALUE).putInt(0).flip();
+    ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(frame.array()));
+    try {
+      WrapperListCodec.readFrame(in);
+      fail();
+    } catch (IOException e) {
+    }
+  }
+
+  /**
+   * Encodes a large hit list repeatedly, checking that it is smaller and faster to round trip than
+   * with Java serialization.
+   */
+  @Test
+  public void isMoreCompactAndFasterThanSerialization() throws Exception {
+    List<RetrievalResult> results = createResults(10000);
+    int rounds = 20;
+    long codecTime = 0;
+    long serializationTime = 0;
+    int codecSize = 0;
+    int serializedSize = 0;
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      ByteBuffer encoded = WrapperListCodec.encodeRetrievalResults(results);
+      WrapperListCodec.decodeRetrievalResults(encoded.duplicate());
+      codecTime += System.nanoTime() - start;
+      codecSize = encoded.remaining();
+      start = System.nanoTime();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(new ArrayList<RetrievalResult>(results));
+      out.close();
+      new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+      serializationTime += System.nanoTime() - start;
+      serializedSize = bytes.size();
+    }
+    assertTrue(codecSize + " >= " + serializedSize, codecSize < serializedSize);
+    assertTrue(codecTime + " >= " + serializationTime, codecTime < serializationTime);
+  }
+
+  private static List<RetrievalResult> createResults(int size) {
+    List<RetrievalResult> results = new ArrayList<RetrievalResult>(size);
+    for (int i = 0; i < size; i++) {
+      RetrievalResult result = new RetrievalResult("doc-" + (i % 1000), size - i, "query "
+              + (i % 7));
+      result.setRank(i + 1);
+      result.setComponentId("strategist");
+      results.add(result);
+    }
+    return results;
+  }
+
+  private static void assertBaseEquals(BaseAnnotationWrapper<?> expected,
+          BaseAnnotationWrapper<?> actual) {
+    assertEquals(expected.getComponentId(), actual.getComponentId());
+    assertEquals(expected.getImplementingWrapper(), actual.getImplementingWrapper());
+    assertEquals(expected.getProbability(), actual.getProbability(), 0);
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2013 Carnegie Mellon University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.cmu.lti.oaqa.framework.data.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.XMLInputSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.oaqa.model.Document;
+import org.oaqa.model.Passage;
+
+import edu.cmu.lti.oaqa.framework.data.PassageCandidate;
+
+public class AnnotationFactoriesTest {
+
+  private JCas jcas;
+
+  @Before
+  public void createJCas() throws Exception {
+    TypeSystemDescription types = UIMAFramework.getXMLParser().parseTypeSystemDescription(
+            new XMLInputSource(getClass().getResource("/edu/cmu/lti/oaqa/OAQATypes.xml")));
+    jcas = CasCreationUtils.createCas(types, null, null).getJCas();
+  }
+
+  @Test
+  public void reusesConstructorFactory() throws Exception {
+    AnnotationFactory<Document> factory = AnnotationFactories.get(Document.class);
+    assertSame(factory, AnnotationFactories.get(Document.class));
+    assertEquals(Document.class, factory.create(jcas).getClass());
+  }
+
+  @Test
+  public void unwrapUsesRegisteredFactory() throws Exception {
+    final AnnotationFactory<Passage> original = AnnotationFactories.get(Passage.class);
+    final int[] created = new int[1];
+    AnnotationFactories.register(Passage.class, new AnnotationFactory<Passage>() {
+
+      @Override
+      public Passage create(JCas jcas) throws Exception {
+        created[0]++;
+        return original.create(jcas);
+      }
+    });
+    try {
+      Passage passage = new PassageCandidate("doc-1", 3, 7, 0.5f, "query").unwrap(jcas);
+      assertEquals(1, created[0]);
+      assertEquals("doc-1", passage.getUri());
+      assertEquals(3, passage.getBegin());
+    } finally {
+      AnnotationFactories.register(Passage.class, original);
+    }
+  }
+
+  /**
+   * Guards the point of the registry: once a factory is cached, creating an element must not cost
+   * more than the reflective constructor lookup it replaced.
+   */
+  @Test
+  public void cachedFactoryIsNotSlowerThanReflection() throws Exception {
+    int n = 20000;
+    long reflective = Long.MAX_VALUE;
+    long cached = Long.MAX_VALUE;
+    for (int round = 0; round < 5; round++) {
+      jcas.reset();
+      long start = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        Passage.class.getConstructor(JCas.class).newInstance(jcas);
+      }
+      reflective = Math.min(reflective, System.nanoTime() - start);
+      jcas.reset();
+      start = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        AnnotationFactories.get(Passage.class).create(jcas);
+      }
+      cached = Math.min(cached, System.nanoTime() - start);
+    }
+    assertTrue("registry " + cached / n + " ns/element, reflection " + reflective / n
+            + " ns/element", cached <= reflective * 2);
+  }
+
+}